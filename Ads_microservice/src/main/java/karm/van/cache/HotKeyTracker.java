@@ -0,0 +1,121 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.config.properties.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Какие страницы и поиски запрашивают чаще всего. Запрос только увеличивает счетчик в памяти, в Redis
+// (sorted set v3:hot:<семейство>, общий для всех реплик) счетчики уходят пачкой при flush.
+// Поэтому после рестарта прогрев знает, что запрашивали до него
+@Component
+@Slf4j
+public class HotKeyTracker {
+    // Больше разных ключей между flush не копим - редкие ключи в прогрев все равно не попадут
+    private static final int MAX_PENDING_KEYS = 1000;
+    // Все счетчики семейства и TTL одним запросом. ARGV: TTL, затем пары прирост - member
+    private static final String INCREMENT_ALL = """
+            for i = 2, #ARGV, 2 do
+                redis.call('ZINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            return redis.call('EXPIRE', KEYS[1], ARGV[1])
+            """;
+
+    private final RedisCommands<String, String> redisCommands;
+    private final ObjectMapper objectMapper;
+    private final String keyPrefix;
+    private final boolean enabled;
+    private final long ttlSeconds;
+    private final Map<String, Map<String, LongAdder>> pending = new ConcurrentHashMap<>();
+
+    public HotKeyTracker(RedisCommands<String, String> redisCommands, ObjectMapper objectMapper, CacheProperties properties) {
+        this.redisCommands = redisCommands;
+        this.objectMapper = objectMapper;
+        this.keyPrefix = properties.getKeyVersion() + ":hot:";
+        this.enabled = properties.getPrewarm().isEnabled();
+        this.ttlSeconds = properties.getPrewarm().getHotKeysTtlSeconds();
+    }
+
+    public void record(String family, Object key) {
+        if (!enabled) {
+            return;
+        }
+
+        String member;
+        try {
+            member = objectMapper.writeValueAsString(key);
+        } catch (JsonProcessingException e) {
+            log.debug("Hot key {} was not recorded: {}", key, e.getMessage());
+            return;
+        }
+
+        Map<String, LongAdder> counts = pending.computeIfAbsent(family, f -> new ConcurrentHashMap<>());
+        LongAdder count = counts.get(member);
+        if (count == null) {
+            if (counts.size() >= MAX_PENDING_KEYS) {
+                return;
+            }
+            count = counts.computeIfAbsent(member, m -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    // Переносит накопленные счетчики в Redis, по одному скрипту на семейство.
+    // Семейство, которое давно не запрашивали, истекает целиком
+    public synchronized void flush() {
+        try {
+            pending.forEach((family, counts) -> {
+                if (counts.isEmpty()) {
+                    return;
+                }
+                List<String> args = new ArrayList<>();
+                args.add(String.valueOf(ttlSeconds));
+                for (String member : List.copyOf(counts.keySet())) {
+                    LongAdder count = counts.remove(member);
+                    if (count != null) {
+                        args.add(String.valueOf(count.sum()));
+                        args.add(member);
+                    }
+                }
+                redisCommands.eval(INCREMENT_ALL, ScriptOutputType.INTEGER, new String[]{keyPrefix + family},
+                        args.toArray(new String[0]));
+            });
+        } catch (RuntimeException e) {
+            log.warn("Hot keys were not flushed: {}", e.getMessage());
+        }
+    }
+
+    // Самые запрашиваемые ключи семейства, сначала самые частые
+    public <T> List<T> top(String family, int count, Class<T> type) {
+        if (count <= 0) {
+            return List.of();
+        }
+
+        List<String> members;
+        try {
+            members = redisCommands.zrevrange(keyPrefix + family, 0, count - 1);
+        } catch (RuntimeException e) {
+            log.warn("Hot keys of {} were not read: {}", family, e.getMessage());
+            return List.of();
+        }
+
+        List<T> keys = new ArrayList<>(members.size());
+        for (String member : members) {
+            try {
+                keys.add(objectMapper.readValue(member, type));
+            } catch (JsonProcessingException e) {
+                log.debug("Hot key {} was skipped: {}", member, e.getMessage());
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,175 @@
+package karm.van.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// L1 в памяти сервиса перед Redis для карточек и страниц листинга: без сетевого похода и десериализации.
+// Записи вытесняются по размеру и живут недолго (card.l1.*). Удаление ключа и смена поколения рассылаются
+// через Redis pub/sub, и свою копию выбрасывает каждая реплика Ads. Если сообщение потерялось (переподключение),
+// устаревшая запись или поколение проживут не дольше card.l1.ttl-ms
+@Component
+@Slf4j
+public class NearCache {
+    static final String INVALIDATION_CHANNEL = "ads:cache:invalidate";
+    private static final String KEY_MESSAGE = "key:";
+    private static final String GENERATION_MESSAGE = "gen:";
+
+    private final RedisCache redisCache;
+    private final RedisCommands<String, String> redisCommands;
+    private final StatefulRedisPubSubConnection<String, String> pubSubConnection;
+    private final Cache<String, Object> local;
+    private final Cache<String, Long> generations;
+    private final Map<String, List<Runnable>> generationListeners = new ConcurrentHashMap<>();
+
+    public NearCache(RedisCache redisCache,
+                     RedisCommands<String, String> redisCommands,
+                     StatefulRedisPubSubConnection<String, String> pubSubConnection,
+                     MeterRegistry meterRegistry,
+                     @Value("${card.l1.max-size:10000}") long maxSize,
+                     @Value("${card.l1.ttl-ms:10000}") long ttlMs) {
+        this.redisCache = redisCache;
+        this.redisCommands = redisCommands;
+        this.pubSubConnection = pubSubConnection;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        this.generations = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "card-l1");
+    }
+
+    @PostConstruct
+    void subscribe() {
+        pubSubConnection.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                if (INVALIDATION_CHANNEL.equals(channel)) {
+                    evictLocal(message);
+                }
+            }
+        });
+        pubSubConnection.sync().subscribe(INVALIDATION_CHANNEL);
+    }
+
+    // L1, затем RedisCache.getOrLoad: устаревшее значение из Redis отдается, пока его пересобирают в фоне
+    public <T, E extends Exception> T getOrLoad(String key, Class<T> type, CacheLoader<T, E> loader) throws E {
+        Object value = local.getIfPresent(key);
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        }
+
+        long since = redisCache.evictionEpoch();
+        T loaded = redisCache.getOrLoad(key, type, loader);
+        if (loaded != null && !redisCache.evictedSince(key, since)) {
+            local.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    // Найденные значения по ключам: сначала L1, остальные одним MGET из Redis. Отсутствующих ключей в ответе нет
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) {
+        Map<String, T> found = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Object value = local.getIfPresent(key);
+            if (type.isInstance(value)) {
+                found.put(key, type.cast(value));
+            } else {
+                missing.add(key);
+            }
+        }
+
+        long since = redisCache.evictionEpoch();
+        Map<String, T> fromRedis = redisCache.getAll(missing, type);
+        fromRedis.forEach((key, value) -> {
+            if (!redisCache.evictedSince(key, since)) {
+                local.put(key, value);
+            }
+        });
+        found.putAll(fromRedis);
+        return found;
+    }
+
+    // В L1 сразу, в Redis - после ответа (RedisCache.putAllBehind). since - RedisCache.evictionEpoch() до чтения
+    // значений: ключи, удаленные после него, ни в L1, ни в Redis не попадут
+    public <T> void putAll(Map<String, T> values, Class<T> type, long since) {
+        redisCache.putAllBehind(values, type, since);
+        values.forEach((key, value) -> {
+            if (!redisCache.evictedSince(key, since)) {
+                local.put(key, value);
+            }
+        });
+    }
+
+    public long evictionEpoch() {
+        return redisCache.evictionEpoch();
+    }
+
+    // Удаляет ключи из Redis и из L1 всех реплик, возвращает сколько ключей было в Redis
+    public long evict(String... keys) {
+        long deleted = redisCache.evict(keys);
+        for (String key : keys) {
+            local.invalidate(key);
+            publish(KEY_MESSAGE + key);
+        }
+        return deleted;
+    }
+
+    // Текущее поколение пространства ключей (см. RedisCache.generation), без похода в Redis на каждый запрос
+    public long generation(String namespace) {
+        return generations.get(namespace, redisCache::generation);
+    }
+
+    // Сбрасывает все записи пространства во всех репликах: старые ключи больше не строятся
+    public void nextGeneration(String namespace) {
+        generations.put(namespace, redisCache.nextGeneration(namespace));
+        publish(GENERATION_MESSAGE + namespace);
+        generationListeners.getOrDefault(namespace, List.of()).forEach(Runnable::run);
+    }
+
+    // Вызывается после смены поколения только в той реплике, которая его сменила
+    public void onNextGeneration(String namespace, Runnable listener) {
+        generationListeners.computeIfAbsent(namespace, n -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    private void evictLocal(String message) {
+        if (message.startsWith(KEY_MESSAGE)) {
+            String key = message.substring(KEY_MESSAGE.length());
+            // Запись после ответа этой реплики, собранная до удаления в другой, тоже не должна его вернуть
+            redisCache.markEvicted(key);
+            local.invalidate(key);
+        } else if (message.startsWith(GENERATION_MESSAGE)) {
+            generations.invalidate(message.substring(GENERATION_MESSAGE.length()));
+        }
+    }
+
+    private void publish(String message) {
+        try {
+            redisCommands.publish(INVALIDATION_CHANNEL, message);
+        } catch (RuntimeException e) {
+            // Остальные реплики досидят со старой записью до конца ее TTL
+            log.warn("Cache invalidation was not broadcast: " + e.getMessage());
+        }
+    }
+}
@@ -6,13 +6,25 @@ import io.lettuce.core.RedisURI;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.api.sync.RedisStringCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.MeterRegistry;
 import karm.van.config.properties.AuthenticationMicroServiceProperties;
+import karm.van.config.properties.CacheProperties;
 import karm.van.config.properties.CommentMicroServiceProperties;
 import karm.van.config.properties.ImageMicroServiceProperties;
+import karm.van.config.properties.JwtProperties;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -22,7 +34,7 @@ import java.util.concurrent.Executor;
 
 @EnableJpaRepositories(basePackages = "karm.van.repo.jpaRepo")
 @EnableElasticsearchRepositories(basePackages = "karm.van.repo.elasticRepo")
-@EnableConfigurationProperties({CommentMicroServiceProperties.class, ImageMicroServiceProperties.class, AuthenticationMicroServiceProperties.class})
+@EnableConfigurationProperties({CommentMicroServiceProperties.class, ImageMicroServiceProperties.class, AuthenticationMicroServiceProperties.class, JwtProperties.class, CacheProperties.class})
 @Configuration
 @EnableAsync
 public class AdsConfiguration {
@@ -34,7 +46,15 @@ public class AdsConfiguration {
     private String redisPassword;
 
     @Bean
-    public Executor getAsyncExecutor() {
+    public Executor getAsyncExecutor(Environment environment) {
+        // С spring.threads.virtual.enabled на Java 21 каждая @Async задача получает свой виртуальный поток,
+        // пул из 10 потоков больше не ограничивает блокирующие вызовы
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Async-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(4);
         executor.setMaxPoolSize(10);
@@ -44,6 +64,19 @@ public class AdsConfiguration {
         return executor;
     }
 
+    // Только с виртуальными потоками: у пула обычных потоков тот же лимит задает server.tomcat.threads.max.
+    // 0 - без ограничения
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            Environment environment,
+            @Value("${virtual-threads.max-concurrent-requests:200}") int maxConcurrentRequests) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(Math.max(maxConcurrentRequests, 1)));
+        registration.setEnabled(Threading.VIRTUAL.isActive(environment) && maxConcurrentRequests > 0);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
     @Bean(destroyMethod = "close")
     public RedisClient redisClient() {
         RedisURI redisURI = RedisURI.builder()
@@ -64,9 +97,26 @@ public class AdsConfiguration {
         return redisClient.connect();
     }
 
+    // Отдельное соединение под подписку на рассылку инвалидаций L1 кеша
+    @Bean(destroyMethod = "close")
+    public StatefulRedisPubSubConnection<String, String> redisPubSubConnection(RedisClient redisClient) {
+        return redisClient.connectPubSub();
+    }
+
+    @Bean
+    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection, MeterRegistry meterRegistry) {
+        return InstrumentedRedisCommands.wrap(connection.sync(), meterRegistry);
+    }
+
+    // Значения кеша хранятся в бинарном виде (Smile/CBOR + LZ4), ключи остаются строками
+    @Bean(destroyMethod = "close")
+    public StatefulRedisConnection<String, byte[]> binaryRedisConnection(RedisClient redisClient) {
+        return redisClient.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+    }
+
     @Bean
-    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection) {
-        return connection.sync();
+    public RedisCommands<String, byte[]> binaryRedisCommands(StatefulRedisConnection<String, byte[]> binaryRedisConnection, MeterRegistry meterRegistry) {
+        return InstrumentedRedisCommands.wrap(binaryRedisConnection.sync(), meterRegistry);
     }
 
 }
@@ -0,0 +1,98 @@
+package karm.van.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Перенос тегов и картинок из таблиц card_tags и card_images в массивы card.tags и card.img_ids.
+// Колонки создает Hibernate (ddl-auto: update), поэтому бин ждет EntityManagerFactory. Старые таблицы не удаляются,
+// а после сверки количества строк переименовываются в *_backup и остаются на релиз для отката. При следующих
+// запусках остаются только значения по умолчанию для массивов и GIN индекс
+@Slf4j
+@Component
+public class CardArrayColumnsMigration {
+    // Чтобы несколько экземпляров сервиса не переносили данные одновременно
+    private static final long LOCK_ID = 0x63617264L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public CardArrayColumnsMigration(JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForObject("select 1 from pg_advisory_xact_lock(?)", Integer.class, LOCK_ID);
+
+            if (tableExists("card_tags")) {
+                int updated = jdbcTemplate.update("""
+                        update card c set tags = t.tags
+                        from (select card_id, array_agg(tag) as tags from card_tags group by card_id) t
+                        where c.id = t.card_id""");
+                log.info("Moved tags of {} cards from card_tags to card.tags", updated);
+                checkMoved("card_tags", "tags");
+                keepAsBackup("card_tags");
+            }
+
+            if (tableExists("card_images")) {
+                int updated = jdbcTemplate.update("""
+                        update card c set img_ids = i.img_ids
+                        from (select card_id, array_agg(image_id order by image_id) as img_ids from card_images group by card_id) i
+                        where c.id = i.card_id""");
+                log.info("Moved image ids of {} cards from card_images to card.img_ids", updated);
+                checkMoved("card_images", "img_ids");
+                keepAsBackup("card_images");
+            }
+
+            // У карточек без строк в старых таблицах массивы остались NULL
+            jdbcTemplate.update("update card set tags = '{}' where tags is null");
+            jdbcTemplate.update("update card set img_ids = '{}' where img_ids is null");
+            jdbcTemplate.execute("alter table card alter column tags set default '{}', alter column tags set not null");
+            jdbcTemplate.execute("alter table card alter column img_ids set default '{}', alter column img_ids set not null");
+
+            jdbcTemplate.execute("create index if not exists idx_card_tags_gin on card using gin (tags)");
+        });
+    }
+
+    // Сверка: строк старой таблицы столько же, сколько элементов в массивах тех же карточек. Иначе транзакция
+    // откатывается и сервис не стартует, старые данные остаются на месте
+    private void checkMoved(String table, String column) {
+        Long expected = jdbcTemplate.queryForObject(
+                "select count(*) from " + table + " t where exists (select 1 from card c where c.id = t.card_id)", Long.class);
+        Long moved = jdbcTemplate.queryForObject(
+                "select coalesce(sum(cardinality(c." + column + ")), 0) from card c " +
+                        "where exists (select 1 from " + table + " t where t.card_id = c.id)", Long.class);
+        if (expected == null || !expected.equals(moved)) {
+            throw new IllegalStateException("%s has %d rows, but card.%s of the same cards has %d elements"
+                    .formatted(table, expected, column, moved));
+        }
+    }
+
+    // Внешний ключ на card снимается, иначе копия мешала бы удалять карточки
+    private void keepAsBackup(String table) {
+        String backup = table + "_backup";
+        jdbcTemplate.execute("alter table " + table + " rename to " + backup);
+        jdbcTemplate.execute("""
+                do $$
+                declare fk record;
+                begin
+                    for fk in select conname from pg_constraint where conrelid = '%s'::regclass and contype = 'f' loop
+                        execute format('alter table %s drop constraint %%I', fk.conname);
+                    end loop;
+                end $$""".formatted(backup, backup));
+        log.info("{} was renamed to {}, it can be dropped in the next release", table, backup);
+    }
+
+    private boolean tableExists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class, table));
+    }
+}
@@ -0,0 +1,44 @@
+package karm.van.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+// С виртуальными потоками Tomcat сразу берет в обработку все принятые запросы. Когда процессор занят, они делят его
+// все вместе, и хвост задержки растет (load-test/RESULTS.md). Фильтр пускает в обработку не больше limit запросов,
+// остальные ждут по очереди - как в очереди пула обычных потоков, но ожидание не занимает поток ОС
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private final Semaphore permits;
+
+    public ConcurrencyLimitFilter(int limit) {
+        this.permits = new Semaphore(limit, true);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while waiting for a free request slot", e);
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Проверки здоровья не стоят в очереди: под нагрузкой они иначе упираются в тот же лимит
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith("/actuator");
+    }
+}
@@ -19,6 +19,7 @@ public class ImageMicroServiceProperties {
         private String addCardImages;
         private String delImagesFromMinio;
         private String getImages;
+        private String getImagesBatch;
         private String delOneImageFromCard;
         private String moveImage;
     }
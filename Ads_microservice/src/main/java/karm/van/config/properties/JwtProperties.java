@@ -0,0 +1,18 @@
+package karm.van.config.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "jwt")
+@Getter
+@Setter
+public class JwtProperties {
+    // false - каждый токен проверяется запросом в Authentication сервис
+    private boolean localValidation = true;
+    // Ключи подписи (kid -> secret), должны совпадать с ключами Authentication сервиса
+    private Map<String, String> keys = new HashMap<>();
+}
@@ -0,0 +1,34 @@
+package karm.van.config.properties.broker;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// События смены имени пользователя от сервиса аутентификации, по ним обновляется витрина карточек
+@Configuration
+@RequiredArgsConstructor
+public class UserRenamedQueueConfig {
+
+    @Value("${rabbitmq.queue.user-renamed.name}")
+    public String userRenamedQueue;
+
+    @Value("${rabbitmq.routing-key.user-renamed.name}")
+    public String userRenamedRoutingKey;
+
+    private final TopicExchange finderExchange;
+
+    @Bean
+    public Queue userRenamedQueue() {
+        return new Queue(userRenamedQueue);
+    }
+
+    @Bean
+    public Binding userRenamedBinding() {
+        return BindingBuilder.bind(userRenamedQueue()).to(finderExchange).with(userRenamedRoutingKey);
+    }
+}
@@ -8,11 +8,13 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import karm.van.dto.card.CardDto;
+import karm.van.dto.card.CardFeedResponseDto;
 import karm.van.dto.card.CardPageResponseDto;
 import karm.van.dto.card.FullCardDtoForOutput;
 import karm.van.exception.card.CardNotDeletedException;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.card.CardNotSavedException;
+import karm.van.exception.card.InvalidCursorException;
 import karm.van.exception.comment.CommentNotDeletedException;
 import karm.van.exception.image.ImageLimitException;
 import karm.van.exception.image.ImageNotDeletedException;
@@ -22,15 +24,18 @@ import karm.van.exception.other.SerializationException;
 import karm.van.exception.other.TokenNotExistException;
 import karm.van.exception.user.NotEnoughPermissionsException;
 import karm.van.exception.user.UsernameNotFoundException;
+import karm.van.service.CardExportService;
 import karm.van.service.CardService;
 import karm.van.service.ElasticService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -44,6 +49,7 @@ import java.util.Optional;
 public class CardController {
     private final CardService cardService;
     private final ElasticService elasticService;
+    private final CardExportService cardExportService;
 
     @Operation(
             summary = "Get card by ID",
@@ -147,9 +153,89 @@ public class CardController {
     public CardPageResponseDto getAllCards(
             @Parameter(description = "The page number to retrieve") @PathVariable int pageNumber,
             @Parameter(description = "The number of ads per page") @PathVariable int limit,
+            @Parameter(description = "Whether to return totalPages and totalElements") @RequestParam(required = false, defaultValue = "true") boolean withTotal,
             @RequestHeader("Authorization") String authorization
     ) throws TokenNotExistException, SerializationException {
-        return cardService.getAllCards(pageNumber, limit, authorization);
+        return cardService.getAllCards(pageNumber, limit, withTotal, authorization);
+    }
+
+    @Operation(
+            summary = "Retrieve the card feed with cursor pagination",
+            description = "Returns the newest cards first. Pass nextCursor from the previous response to get the next page. " +
+                    "Every page costs the same regardless of depth; the total count is only calculated when withTotal=true.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Successful retrieval of the feed page",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = CardFeedResponseDto.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request due to an invalid cursor",
+                            content = @Content(schema = @Schema(type = "string"))
+                    )
+            }
+    )
+    @Parameter(
+            name = "Authorization",
+            in = ParameterIn.HEADER,
+            required = true,
+            description = "JWT token in the format: Bearer &lt;token&gt;"
+    )
+    @GetMapping("feed")
+    public CardFeedResponseDto getCardFeed(
+            @Parameter(description = "Cursor from the previous page, omit for the first page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "The number of ads per page") @RequestParam(required = false, defaultValue = "20") int limit,
+            @Parameter(description = "Whether to calculate the total number of ads") @RequestParam(required = false, defaultValue = "false") boolean withTotal,
+            @RequestHeader("Authorization") String authorization
+    ) throws TokenNotExistException, SerializationException, InvalidCursorException {
+        return cardService.getCardFeed(cursor, limit, withTotal, authorization);
+    }
+
+    @Operation(
+            summary = "Export all cards as a stream",
+            description = "Streams every card, newest first, as NDJSON (one card per line) or as server-sent events " +
+                    "when the client accepts text/event-stream. Each event id is a cursor: pass it as cursor or Last-Event-ID " +
+                    "to continue an interrupted export.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Cards are being streamed",
+                            content = {
+                                    @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = FullCardDtoForOutput.class)),
+                                    @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = FullCardDtoForOutput.class))
+                            }
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Bad Request due to an invalid cursor",
+                            content = @Content(schema = @Schema(type = "string"))
+                    )
+            }
+    )
+    @Parameter(
+            name = "Authorization",
+            in = ParameterIn.HEADER,
+            required = true,
+            description = "JWT token in the format: Bearer &lt;token&gt;"
+    )
+    @GetMapping(value = "export", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public ResponseEntity<StreamingResponseBody> exportCards(
+            @Parameter(description = "Cursor to continue from, omit to export from the newest card") @RequestParam(required = false) String cursor,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader("Authorization") String authorization
+    ) throws TokenNotExistException, InvalidCursorException {
+        CardExportService.Format format = accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE)
+                ? CardExportService.Format.SSE
+                : CardExportService.Format.NDJSON;
+        String from = lastEventId != null && !lastEventId.isBlank() ? lastEventId : cursor;
+        return ResponseEntity.ok()
+                .contentType(format.mediaType())
+                .body(cardExportService.export(from, format, authorization));
     }
 
     @Hidden
@@ -92,10 +92,11 @@ public class ComplaintController {
             @RequestParam(required = false, defaultValue = "5") int limit,
             @RequestParam(required = false, defaultValue = "0") int page,
             @RequestParam(required = false, defaultValue = "all") String complaintType,
+            @RequestParam(required = false, defaultValue = "true") boolean withTotal,
             @RequestHeader("Authorization") String authorization
     ) {
         try {
-            return ResponseEntity.ok(complaintService.getComplaints(authorization, limit, page, complaintType));
+            return ResponseEntity.ok(complaintService.getComplaints(authorization, limit, page, complaintType, withTotal));
         } catch (TokenNotExistException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         } catch (SerializationException | JsonProcessingException | UsernameNotFoundException e) {
@@ -5,6 +5,7 @@ import karm.van.exception.card.CardNotDeletedException;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.card.CardNotSavedException;
 import karm.van.exception.card.CardNotUnlinkException;
+import karm.van.exception.card.InvalidCursorException;
 import karm.van.exception.comment.CommentNotDeletedException;
 import karm.van.exception.image.*;
 import karm.van.exception.other.SerializationException;
@@ -15,6 +16,7 @@ import karm.van.exception.user.UsernameNotFoundException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
@@ -28,6 +30,11 @@ public class ExceptionHandlerController {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> invalidCursorException(InvalidCursorException ex){
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(ImageLimitException.class)
     public ResponseEntity<String> imageLimitException(ImageLimitException ex){
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
@@ -110,4 +117,10 @@ public class ExceptionHandlerController {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    // Карточку одновременно изменил другой запрос (версия CardModel уже другая)
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<String> optimisticLockingFailureException(){
+        return new ResponseEntity<>("The card was changed by another request, try again", HttpStatus.CONFLICT);
+    }
+
 }
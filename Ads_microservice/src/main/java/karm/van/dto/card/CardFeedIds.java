@@ -0,0 +1,9 @@
+package karm.van.dto.card;
+
+import java.util.List;
+
+// Страница ленты в кеше: id карточек по порядку и курсор следующей страницы (null - дальше карточек нет)
+public record CardFeedIds(
+        List<Long> ids,
+        String nextCursor
+) {}
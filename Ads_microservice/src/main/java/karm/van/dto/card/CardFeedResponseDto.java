@@ -0,0 +1,17 @@
+package karm.van.dto.card;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Page of the card feed, newest cards first")
+public record CardFeedResponseDto(
+        @Schema(description = "Cards of this page")
+        List<FullCardDtoForOutput> cards,
+
+        @Schema(description = "Cursor of the next page, null if there are no more cards", example = "MjAyNC0xMC0xMV8xNQ")
+        String nextCursor,
+
+        @Schema(description = "Total number of cards, only if it was requested with withTotal=true")
+        Long totalElements
+) {}
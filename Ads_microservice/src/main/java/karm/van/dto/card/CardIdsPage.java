@@ -0,0 +1,29 @@
+package karm.van.dto.card;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+// Страница листинга или поиска в кеше: только id карточек по порядку и данные пагинации.
+// Сами карточки лежат в кеше отдельно (CardFragmentCache) и собираются при ответе.
+// totalElements есть только у поиска - Elastic считает его сам, листинг берет его из счетчика по запросу
+public record CardIdsPage(
+        List<Long> ids,
+        boolean first,
+        boolean last,
+        int numberOfElements,
+        Long totalElements
+) {
+    public static CardIdsPage of(List<Long> ids, Slice<?> slice) {
+        return new CardIdsPage(ids, slice.isFirst(), slice.isLast(), slice.getNumberOfElements(), null);
+    }
+
+    public static CardIdsPage of(List<Long> ids, Page<?> page) {
+        return new CardIdsPage(ids, page.isFirst(), page.isLast(), page.getNumberOfElements(), page.getTotalElements());
+    }
+
+    public CardIdsPage withTotalElements(long totalElements) {
+        return new CardIdsPage(ids, first, last, numberOfElements, totalElements);
+    }
+}
@@ -0,0 +1,5 @@
+package karm.van.dto.card;
+
+// Страница листинга карточек, которую запрашивали - ее id пересобираются прогревом кеша
+public record CardListingKey(int pageNumber, int limit) {
+}
@@ -12,11 +12,11 @@ public record CardPageResponseDto(
         @Schema(description = "Indicates if this is the last page")
         boolean last,
 
-        @Schema(description = "Total number of pages")
-        int totalPages,
+        @Schema(description = "Total number of pages, null if the total was not requested")
+        Integer totalPages,
 
-        @Schema(description = "Total number of elements")
-        long totalElements,
+        @Schema(description = "Total number of elements, null if the total was not requested")
+        Long totalElements,
 
         @Schema(description = "Indicates if this is the first page")
         boolean first,
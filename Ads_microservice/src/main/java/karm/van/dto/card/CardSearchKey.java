@@ -0,0 +1,8 @@
+package karm.van.dto.card;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Параметры поиска карточек, которые запрашивали - результаты популярных поисков пересобираются прогревом кеша
+public record CardSearchKey(String query, int pageNumber, int limit, LocalDate createTime, List<String> tags) {
+}
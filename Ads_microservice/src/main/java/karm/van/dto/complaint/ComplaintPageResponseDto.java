@@ -12,11 +12,11 @@ public record ComplaintPageResponseDto(
         @Schema(description = "Is this the last page?", example = "false")
         boolean last,
 
-        @Schema(description = "Total number of pages", example = "3")
-        int totalPages,
+        @Schema(description = "Total number of pages, null if the total was not requested", example = "3")
+        Integer totalPages,
 
-        @Schema(description = "Total number of complaints", example = "12")
-        long totalElements,
+        @Schema(description = "Total number of complaints, null if the total was not requested", example = "12")
+        Long totalElements,
 
         @Schema(description = "Is this the first page?", example = "true")
         boolean first,
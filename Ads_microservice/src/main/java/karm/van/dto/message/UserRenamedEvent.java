@@ -0,0 +1,7 @@
+package karm.van.dto.message;
+
+// Приходит из сервиса аутентификации после смены имени пользователя
+public record UserRenamedEvent(
+        Long userId,
+        String name
+) {}
@@ -0,0 +1,9 @@
+package karm.van.exception.card;
+
+public class InvalidCursorException extends Exception{
+
+    public InvalidCursorException(String message){
+        super(message);
+    }
+
+}
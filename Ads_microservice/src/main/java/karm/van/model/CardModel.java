@@ -5,6 +5,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Size;
 import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -17,7 +19,7 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
-@Table(name = "Card")
+@Table(name = "Card", indexes = @Index(name = "idx_card_create_time_id", columnList = "createTime DESC, id DESC"))
 public class CardModel {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -32,14 +34,35 @@ public class CardModel {
 
     private Long userId;
 
-    @ElementCollection
-    @CollectionTable(name = "card_tags", joinColumns = @JoinColumn(name = "card_id"))
-    @Column(name = "tag")
-    private List<String> tags;
+    // Растет при каждом изменении карточки, копируется в card_view: по нему видно, не собрана ли витрина
+    // из устаревшего чтения. default 0 заполняет уже существующие строки при добавлении колонки
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private Long version;
 
-    @ElementCollection
-    @CollectionTable(name = "card_images", joinColumns = @JoinColumn(name = "card_id"))
-    @Column(name = "image_id")
+    // Массивы Postgres в самой строке карточки: читаются вместе с ней, без join таблиц и догрузки.
+    // На tags GIN индекс (CardArrayColumnsMigration) - фильтр по тегам в БД, когда поиск идет мимо Elasticsearch.
+    // NULL в колонках нет, пустой список хранится как '{}'
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(columnDefinition = "text[] default '{}' not null")
+    @Builder.Default
+    private List<String> tags = new ArrayList<>();
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(columnDefinition = "bigint[] default '{}' not null")
+    @Builder.Default
     private List<Long> imgIds = new ArrayList<>();
 
+    // Теги из запроса могут прийти null
+    @PrePersist
+    @PreUpdate
+    void fillEmptyArrays() {
+        if (tags == null) {
+            tags = new ArrayList<>();
+        }
+        if (imgIds == null) {
+            imgIds = new ArrayList<>();
+        }
+    }
+
 }
@@ -0,0 +1,50 @@
+package karm.van.model;
+
+import jakarta.persistence.*;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.dto.image.ImageDto;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Карточка в том виде, в котором ее отдают клиенту: с именем автора и описаниями картинок.
+// Читается одним запросом без походов в Authentication и Image, обновляется CardViewService
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(name = "card_view", indexes = @Index(name = "idx_card_view_user_id", columnList = "userId"))
+public class CardView {
+    // id карточки
+    @Id
+    private Long id;
+
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String text;
+
+    private LocalDate createTime;
+
+    private Long userId;
+
+    // Версия CardModel, из которой собрана строка
+    private Long cardVersion;
+
+    private String authorName;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    private List<String> tags;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    private List<ImageDto> images;
+
+    public FullCardDtoForOutput toDto() {
+        return new FullCardDtoForOutput(id, title, text, createTime, tags, images, authorName);
+    }
+}
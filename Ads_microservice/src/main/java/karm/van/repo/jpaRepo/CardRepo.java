@@ -1,9 +1,16 @@
 package karm.van.repo.jpaRepo;
 
+import karm.van.dto.card.CardCursor;
 import karm.van.model.CardModel;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,4 +19,30 @@ public interface CardRepo extends JpaRepository<CardModel,Long> {
 
     List<CardModel> findAllByUserId(Long userId);
 
+    // Slice: читается на одну строку больше, без count(*). Порядок как у ленты - по индексу (create_time, id)
+    @Query("select c.id from CardModel c order by c.createTime desc, c.id desc")
+    Slice<Long> findSliceIds(Pageable pageable);
+
+    // Карточки, у которых есть все переданные теги (@> по GIN индексу на tags)
+    @Query(value = "select c.id from card c where c.tags @> cast(:tags as text[]) order by c.create_time desc, c.id desc",
+            nativeQuery = true)
+    Slice<Long> findSliceIdsByTags(@Param("tags") String[] tags, Pageable pageable);
+
+    // id карточек, версия которых все еще равна прочитанной. Строки остаются под FOR SHARE до конца транзакции,
+    // так что правка карточки не проскочит между этой проверкой и записью витрины
+    @Query(value = "select c.id from card c " +
+            "join unnest(cast(:ids as bigint[]), cast(:versions as bigint[])) as v(id, version) " +
+            "on c.id = v.id and c.version = v.version for share of c", nativeQuery = true)
+    List<Long> lockUnchanged(@Param("ids") Long[] ids, @Param("versions") Long[] versions);
+
+    // Лента по индексу (create_time, id): начало ленты и страница после курсора, без OFFSET и count
+    @Query("select new karm.van.dto.card.CardCursor(c.createTime, c.id) from CardModel c " +
+            "order by c.createTime desc, c.id desc")
+    List<CardCursor> findFeedStart(Limit limit);
+
+    @Query("select new karm.van.dto.card.CardCursor(c.createTime, c.id) from CardModel c " +
+            "where c.createTime < :createTime or (c.createTime = :createTime and c.id < :id) " +
+            "order by c.createTime desc, c.id desc")
+    List<CardCursor> findFeedAfter(@Param("createTime") LocalDate createTime, @Param("id") Long id, Limit limit);
+
 }
@@ -0,0 +1,18 @@
+package karm.van.repo.jpaRepo;
+
+import karm.van.model.CardView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface CardViewRepo extends JpaRepository<CardView,Long> {
+    @Query("select v.id from CardView v where v.userId = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("update CardView v set v.authorName = :authorName where v.userId = :userId")
+    int updateAuthorName(@Param("userId") Long userId, @Param("authorName") String authorName);
+}
@@ -1,9 +1,10 @@
 package karm.van.service;
 
-import jakarta.annotation.PostConstruct;
 import karm.van.dto.comment.FullCommentDtoResponse;
 import karm.van.dto.image.ImageDto;
 import karm.van.dto.user.UserDtoRequest;
+import karm.van.utils.SingleFlight;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
@@ -15,22 +16,28 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
-
-    @PostConstruct
-    public void init() {
-        webClient = WebClient.create();
-    }
+    private final WebClient webClient;
+    // Базовые адреса (prefix + host + port + endpoint) разбираются один раз, дальше к ним только дописываются id
+    private final Map<String, String> urlTemplates = new ConcurrentHashMap<>();
+    // Одинаковые одновременные запросы на чтение (один и тот же автор, одни и те же картинки) уходят в сеть один раз.
+    // Запросы идут с токеном пользователя, поэтому токен входит в ключ: чужой отказ авторизации или пустой ответ не делится
+    private final SingleFlight inFlight = new SingleFlight();
 
     private <T> T sendPostRequest(String url, Object body, String token, String apiKey, ParameterizedTypeReference<T> responseType) {
         return webClient
@@ -170,23 +177,80 @@ public class ApiService {
         );
     }
 
+    // Картинки сразу для всех карточек страницы: cardId -> id картинок в ответ на cardId -> ImageDto
+    public Map<Long, List<ImageDto>> getCardsImagesRequest(Map<Long, List<Long>> imagesIdByCard, String url, String token, String apiKey) {
+        return getCardsImagesAsync(imagesIdByCard, url, token, apiKey).block();
+    }
+
+    public Mono<Map<Long, List<ImageDto>>> getCardsImagesAsync(Map<Long, List<Long>> imagesIdByCard, String url, String token, String apiKey) {
+        if (imagesIdByCard.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+
+        return inFlight.executeAsync("POST " + url + " " + new TreeMap<>(imagesIdByCard) + " " + token, () -> webClient
+                .post()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.setBearerAuth(token);
+                    headers.set("x-api-key", apiKey);
+                })
+                .bodyValue(imagesIdByCard)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<Long, List<ImageDto>>>() {})
+                .defaultIfEmpty(Map.of()));
+    }
+
     private UserDtoRequest fetchUserData(String uri, String token, String apiKey) {
         return sendGetResponse(uri,token, UserDtoRequest.class,apiKey);
     }
 
     public UserDtoRequest getUserByToken(String url, String token, String apiKey) {
-        return fetchUserData(url, token, apiKey);
+        return inFlight.execute("GET " + url + " " + token, () -> fetchUserData(url, token, apiKey));
     }
 
     public UserDtoRequest getUserById(String url, String token, Long userId, String apiKey) {
         String uri = UriComponentsBuilder.fromHttpUrl(url)
                 .queryParam("userId", userId)
                 .toUriString();
-        return fetchUserData(uri, token, apiKey);
+        return inFlight.execute("GET " + uri + " " + token, () -> fetchUserData(uri, token, apiKey));
+    }
+
+    // Один запрос за всеми авторами страницы. Повторяющиеся id отправляются один раз
+    public Map<Long, UserDtoRequest> getUsersByIds(String url, String token, Collection<Long> userIds, String apiKey) {
+        return getUsersByIdsAsync(url, token, userIds, apiKey).block();
+    }
+
+    public Mono<Map<Long, UserDtoRequest>> getUsersByIdsAsync(String url, String token, Collection<Long> userIds, String apiKey) {
+        List<Long> ids = userIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        if (ids.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+
+        String uri = UriComponentsBuilder.fromHttpUrl(url)
+                .queryParam("ids", getIds(ids))
+                .toUriString();
+
+        return inFlight.executeAsync("GET " + uri + " " + token, () -> webClient
+                .get()
+                .uri(uri)
+                .headers(httpHeaders -> {
+                    httpHeaders.set("x-api-key",apiKey);
+                    httpHeaders.setBearerAuth(token);
+                })
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<UserDtoRequest>>() {})
+                .map(users -> users.stream()
+                        .collect(Collectors.toMap(UserDtoRequest::id, Function.identity(), (first, second) -> first)))
+                .defaultIfEmpty(Map.of()));
     }
 
     public Boolean validateToken(String token, String url) {
-        Map<?, ?> responseMap = sendGetResponse(url, token, Map.class,null);
+        Map<?, ?> responseMap = inFlight.execute("GET " + url + " " + token, () -> sendGetResponse(url, token, Map.class,null));
         return responseMap != null && responseMap.containsKey("valid") && (Boolean) responseMap.get("valid");
     }
 
@@ -253,21 +317,25 @@ public class ApiService {
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(prefix + host + ":" + port + endpoint);
+        StringBuilder url = new StringBuilder(buildUrl(prefix, host, port, endpoint));
 
-        if (ids.length > 0) {
-            uriBuilder.pathSegment(ids[0].toString());
-            for (int i = 1; i < ids.length; i++) {
-                uriBuilder.pathSegment(ids[i].toString());
-            }
+        for (Long id : ids) {
+            appendPathSegment(url, id.toString());
         }
 
-        return uriBuilder.toUriString();
+        return url.toString();
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint) {
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(prefix + host + ":" + port + endpoint);
-        return uriBuilder.toUriString();
+        return urlTemplates.computeIfAbsent(prefix + host + ":" + port + endpoint,
+                url -> UriComponentsBuilder.fromHttpUrl(url).toUriString());
+    }
+
+    private void appendPathSegment(StringBuilder url, String segment) {
+        if (url.charAt(url.length() - 1) != '/') {
+            url.append('/');
+        }
+        url.append(segment);
     }
 
     private HttpStatusCode sendPostRequest(String url, String apiKey, List<?> requestBody) {
@@ -1,5 +1,6 @@
 package karm.van.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import karm.van.dto.card.ElasticPatchDto;
 import karm.van.dto.message.EmailDataDto;
 import karm.van.dto.rollBack.RollBackCommand;
@@ -7,6 +8,7 @@ import karm.van.model.CardDocument;
 import karm.van.model.CardModel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -40,25 +42,36 @@ public class BrokerProducer {
     private String rollBackRoutingKey;
 
     private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
 
     public void sendEmailMessage(EmailDataDto emailDataDto){
-        rabbitTemplate.convertAndSend(finderExchange,emailRoutingKey,emailDataDto);
+        send(finderExchange,emailRoutingKey,emailDataDto);
     }
 
     public void saveInBroker(CardDocument cardDocument){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeySave,cardDocument);
+        send(elasticExchange,elasticRoutingKeySave,cardDocument);
     }
 
     public void saveInBroker(CardModel cardModel){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeyDel,cardModel);
+        send(elasticExchange,elasticRoutingKeyDel,cardModel);
     }
 
     public void saveInBroker(ElasticPatchDto elasticPatchDto){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeyPatch,elasticPatchDto);
+        send(elasticExchange,elasticRoutingKeyPatch,elasticPatchDto);
     }
 
     public void sendRollBack(RollBackCommand rollBackCommand){
-        rabbitTemplate.convertAndSend(rollBackExchange,rollBackRoutingKey,rollBackCommand);
+        send(rollBackExchange,rollBackRoutingKey,rollBackCommand);
     }
 
+    // Счетчик rabbit.published по exchange, routing key и результату отправки
+    private void send(String exchange, String routingKey, Object message) {
+        try {
+            rabbitTemplate.convertAndSend(exchange, routingKey, message);
+            meterRegistry.counter("rabbit.published", "exchange", exchange, "routing.key", routingKey, "result", "success").increment();
+        } catch (AmqpException e) {
+            meterRegistry.counter("rabbit.published", "exchange", exchange, "routing.key", routingKey, "result", "failure").increment();
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,129 @@
+package karm.van.service;
+
+import jakarta.annotation.PreDestroy;
+import karm.van.cache.HotKeyTracker;
+import karm.van.cache.NearCache;
+import karm.van.config.properties.CacheProperties;
+import karm.van.dto.card.CardListingKey;
+import karm.van.dto.card.CardSearchKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Прогрев кеша после старта и после смены поколения листинга: самые запрашиваемые страницы, начало ленты
+// и поиски (HotKeyTracker) пересобираются в фоне, до того как их попросит пользователь.
+// Одновременно пересобирается не больше redis.cache.prewarm.concurrency ключей, карточки берутся только
+// из витрины - в сервисы картинок и аутентификации прогрев не ходит
+@Service
+@Slf4j
+public class CachePrewarmer {
+    public static final String LISTINGS = "listings";
+    public static final String FEEDS = "feeds";
+    public static final String SEARCHES = "searches";
+
+    private final CardService cardService;
+    private final ElasticService elasticService;
+    private final HotKeyTracker hotKeyTracker;
+    private final CacheProperties.Prewarm properties;
+    // null, если прогрев выключен (redis.cache.prewarm.enabled)
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor workers;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public CachePrewarmer(CardService cardService,
+                          ElasticService elasticService,
+                          HotKeyTracker hotKeyTracker,
+                          NearCache nearCache,
+                          CacheProperties cacheProperties) {
+        this.cardService = cardService;
+        this.elasticService = elasticService;
+        this.hotKeyTracker = hotKeyTracker;
+        this.properties = cacheProperties.getPrewarm();
+
+        if (!properties.isEnabled()) {
+            this.scheduler = null;
+            this.workers = null;
+            return;
+        }
+
+        CustomizableThreadFactory schedulerThreads = new CustomizableThreadFactory("cache-prewarm-scheduler-");
+        schedulerThreads.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(schedulerThreads);
+
+        CustomizableThreadFactory workerThreads = new CustomizableThreadFactory("cache-prewarm-");
+        workerThreads.setDaemon(true);
+        int capacity = Math.max(properties.getListings() + properties.getFeeds() + properties.getSearches(), 1);
+        this.workers = new ThreadPoolExecutor(properties.getConcurrency(), properties.getConcurrency(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), workerThreads);
+
+        scheduler.scheduleWithFixedDelay(hotKeyTracker::flush,
+                properties.getFlushIntervalMs(), properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        nearCache.onNextGeneration(CardService.CARDS_NAMESPACE, this::schedule);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        schedule();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    // Пока прогрев ждет запуска, повторные вызовы ничего не добавляют
+    private void schedule() {
+        if (scheduler != null && scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::prewarm, properties.getDelayMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void prewarm() {
+        scheduled.set(false);
+        hotKeyTracker.flush();
+
+        List<CardListingKey> listings = hotKeyTracker.top(LISTINGS, properties.getListings(), CardListingKey.class);
+        List<Integer> feeds = hotKeyTracker.top(FEEDS, properties.getFeeds(), Integer.class);
+        List<CardSearchKey> searches = hotKeyTracker.top(SEARCHES, properties.getSearches(), CardSearchKey.class);
+        log.info("Cache prewarm: {} listing pages, {} feed pages, {} searches", listings.size(), feeds.size(), searches.size());
+
+        listings.forEach(key -> submit("listing " + key, () -> cardService.prewarmListing(key.pageNumber(), key.limit())));
+        feeds.forEach(limit -> submit("feed limit " + limit, () -> cardService.prewarmFeedStart(limit)));
+        searches.forEach(key -> submit("search " + key, () -> elasticService.prewarmSearch(key)));
+    }
+
+    private void submit(String what, PrewarmTask task) {
+        try {
+            workers.execute(() -> {
+                try {
+                    int cards = task.run();
+                    log.debug("Prewarmed {}, {} cards loaded from card_view", what, cards);
+                } catch (Exception e) {
+                    log.warn("Prewarm of {} failed: {}", what, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Предыдущий прогрев еще идет - этот ключ соберет следующий или первый запрос
+            log.debug("Prewarm of {} was skipped: queue is full", what);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PrewarmTask {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,109 @@
+package karm.van.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import karm.van.dto.card.CardCursor;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.exception.card.InvalidCursorException;
+import karm.van.exception.other.TokenNotExistException;
+import karm.van.repo.jpaRepo.CardRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Выгрузка всего каталога одним ответом. Карточки идут по индексу (createTime, id) пачками, как в ленте,
+// и пишутся в ответ сразу: в памяти одна пачка при любом размере каталога, соединение с БД между пачками
+// не держится. Запись блокируется, пока клиент не дочитал, - медленный клиент просто замедляет выгрузку.
+// Кеш страниц и карточек не используется и не заполняется: выгрузка читает каждую карточку один раз
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CardExportService {
+    private final CardRepo cardRepo;
+    private final CardViewService cardViewService;
+    private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${card.export.batch-size:100}")
+    private int batchSize;
+
+    public enum Format {
+        // Карточка на строку
+        NDJSON(MediaType.APPLICATION_NDJSON),
+        // Событие на карточку, id события - курсор. После обрыва EventSource продолжит с Last-Event-ID
+        SSE(MediaType.TEXT_EVENT_STREAM);
+
+        private final MediaType mediaType;
+
+        Format(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public MediaType mediaType() {
+            return mediaType;
+        }
+    }
+
+    // Токен и курсор проверяются до начала ответа, ошибки уходят обычным статусом, а не обрывом потока
+    public StreamingResponseBody export(String cursor, Format format, String authorization) throws TokenNotExistException, InvalidCursorException {
+        String token = authorization.substring(7);
+        if (!jwtService.validateAccessToken(token)) {
+            throw new TokenNotExistException("Invalid token or expired");
+        }
+
+        CardCursor after = cursor == null || cursor.isBlank() ? null : CardCursor.decode(cursor);
+        return out -> write(after, format, token, out);
+    }
+
+    private void write(CardCursor after, Format format, String token, OutputStream out) throws IOException {
+        CardCursor position = after;
+        long written = 0;
+        while (true) {
+            List<CardCursor> keys = position == null
+                    ? cardRepo.findFeedStart(Limit.of(batchSize))
+                    : cardRepo.findFeedAfter(position.createTime(), position.id(), Limit.of(batchSize));
+            if (keys.isEmpty()) {
+                break;
+            }
+
+            Map<Long, FullCardDtoForOutput> cards = new HashMap<>();
+            cardViewService.getCards(keys.stream().map(CardCursor::id).toList(), token).cards()
+                    .forEach(card -> cards.put(card.id(), card));
+
+            // Карточки, удаленные между чтением индекса и витрины, пропускаются
+            for (CardCursor key : keys) {
+                FullCardDtoForOutput card = cards.get(key.id());
+                if (card != null) {
+                    out.write(frame(format, key, card));
+                    written++;
+                }
+            }
+            out.flush();
+
+            if (keys.size() < batchSize) {
+                break;
+            }
+            position = keys.get(keys.size() - 1);
+        }
+        log.debug("Card export finished: {} cards in {}", written, format);
+    }
+
+    private byte[] frame(Format format, CardCursor key, FullCardDtoForOutput card) throws IOException {
+        String json = objectMapper.writeValueAsString(card);
+        String frame = switch (format) {
+            case NDJSON -> json + "\n";
+            case SSE -> "id:" + key.encode() + "\ndata:" + json + "\n\n";
+        };
+        return frame.getBytes(StandardCharsets.UTF_8);
+    }
+}
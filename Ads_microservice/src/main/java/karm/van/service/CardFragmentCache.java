@@ -0,0 +1,102 @@
+package karm.van.service;
+
+import karm.van.cache.NearCache;
+import karm.van.dto.card.CardIdsPage;
+import karm.van.dto.card.CardPageResponseDto;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.exception.card.CardNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+// Карточки в кеше лежат по одной (card<id>) вместе с именем автора и картинками, а страницы - списками id.
+// Страница собирается одним MGET по id, недостающие карточки читаются из витрины (CardViewService).
+// Поэтому правка карточки сбрасывает только ее ключ, а не все страницы, где она есть
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CardFragmentCache {
+    private final NearCache nearCache;
+    private final CardViewService cardViewService;
+
+    public static String cardKey(Long cardId) {
+        return "card%d".formatted(cardId);
+    }
+
+    public FullCardDtoForOutput getCard(Long cardId, String token) throws CardNotFoundException {
+        List<FullCardDtoForOutput> cards = getCards(List.of(cardId), token);
+        if (cards.isEmpty()) {
+            throw new CardNotFoundException("card with this id doesn't exist");
+        }
+        return cards.get(0);
+    }
+
+    // Карточки в порядке ids. Удаленные после кеширования страницы карточки пропускаются,
+    // недособранные отдаются, но не кешируются - следующий запрос соберет их заново
+    public List<FullCardDtoForOutput> getCards(List<Long> ids, String token) {
+        long since = nearCache.evictionEpoch();
+        List<String> keys = ids.stream().map(CardFragmentCache::cardKey).toList();
+        Map<String, FullCardDtoForOutput> cached = nearCache.getAll(keys, FullCardDtoForOutput.class);
+
+        List<Long> missing = ids.stream()
+                .filter(id -> !cached.containsKey(cardKey(id)))
+                .toList();
+        Map<Long, FullCardDtoForOutput> cards = new HashMap<>();
+        cached.values().forEach(card -> cards.put(card.id(), card));
+
+        if (!missing.isEmpty()) {
+            Map<String, FullCardDtoForOutput> loaded = new LinkedHashMap<>();
+            CardViewService.Cards found = cardViewService.getCards(missing, token);
+            found.cards().forEach(card -> {
+                cards.put(card.id(), card);
+                if (found.isComplete(card.id())) {
+                    loaded.put(cardKey(card.id()), card);
+                }
+            });
+            nearCache.putAll(loaded, FullCardDtoForOutput.class, since);
+        }
+
+        return ids.stream()
+                .map(cards::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Прогрев: недостающие карточки берутся только из витрины. Кого в ней нет, соберет первый запрос пользователя -
+    // сервису картинок нужен его токен. Возвращает, сколько карточек положено в кеш
+    public int prewarm(List<Long> ids) {
+        long since = nearCache.evictionEpoch();
+        List<String> keys = ids.stream().map(CardFragmentCache::cardKey).toList();
+        Map<String, FullCardDtoForOutput> cached = nearCache.getAll(keys, FullCardDtoForOutput.class);
+
+        List<Long> missing = ids.stream()
+                .filter(id -> !cached.containsKey(cardKey(id)))
+                .toList();
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, FullCardDtoForOutput> loaded = new LinkedHashMap<>();
+        cardViewService.getViews(missing).forEach(card -> loaded.put(cardKey(card.id()), card));
+        nearCache.putAll(loaded, FullCardDtoForOutput.class, since);
+        return loaded.size();
+    }
+
+    // totalPages и totalElements заполняются, только если у страницы есть totalElements
+    public CardPageResponseDto toPage(CardIdsPage page, int limit, String token) {
+        List<FullCardDtoForOutput> cards = getCards(page.ids(), token);
+        if (cards.size() < page.ids().size()) {
+            log.debug("Page references " + (page.ids().size() - cards.size()) + " deleted cards");
+        }
+        Long total = page.totalElements();
+        return new CardPageResponseDto(
+                cards,
+                page.last(),
+                total == null ? null : (int) Math.ceil((double) total / limit),
+                total,
+                page.first(),
+                page.numberOfElements());
+    }
+}
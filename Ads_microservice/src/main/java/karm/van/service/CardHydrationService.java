@@ -0,0 +1,134 @@
+package karm.van.service;
+
+import karm.van.config.properties.AuthenticationMicroServiceProperties;
+import karm.van.config.properties.ImageMicroServiceProperties;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.dto.image.ImageDto;
+import karm.van.dto.user.UserDtoRequest;
+import karm.van.model.CardModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+// Собирает FullCardDtoForOutput: картинки и авторы карточек запрашиваются параллельно пачками.
+// На всю страницу дается один общий дедлайн, упавшая или не успевшая пачка не ломает страницу -
+// её карточки отдаются без картинок/имени автора
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CardHydrationService {
+    private final ApiService apiService;
+    private final ImageMicroServiceProperties imageProperties;
+    private final AuthenticationMicroServiceProperties authenticationProperties;
+
+    @Value("${microservices.x-api-key}")
+    private String apiKey;
+
+    @Value("${card.hydration.batch-size:25}")
+    private int batchSize;
+
+    @Value("${card.hydration.concurrency:4}")
+    private int concurrency;
+
+    @Value("${card.hydration.timeout-ms:3000}")
+    private long timeoutMs;
+
+    public FullCardDtoForOutput toFullCardDto(CardModel card, String token) {
+        return toFullCardsDto(List.of(card), token).get(0);
+    }
+
+    public List<FullCardDtoForOutput> toFullCardsDto(List<CardModel> cards, String token) {
+        if (cards.isEmpty()) {
+            return List.of();
+        }
+
+        // id картинок - массив в строке карточки, он уже загружен. Копия, чтобы reactor потоки не видели
+        // правок сущности; NULL бывает у строк, которые еще не прошла CardArrayColumnsMigration
+        Map<Long, List<Long>> imagesIdByCard = new LinkedHashMap<>();
+        cards.forEach(card -> imagesIdByCard.put(card.getId(),
+                card.getImgIds() == null ? List.of() : new ArrayList<>(card.getImgIds())));
+
+        List<Long> authorIds = cards.stream()
+                .map(CardModel::getUserId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        Map<Long, List<ImageDto>> images = new ConcurrentHashMap<>();
+        Map<Long, UserDtoRequest> authors = new ConcurrentHashMap<>();
+
+        Mono.when(
+                        requestImages(imagesIdByCard, token).doOnNext(images::putAll),
+                        requestAuthors(authorIds, token).doOnNext(authors::putAll))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .onErrorResume(TimeoutException.class, e -> {
+                    log.warn("Card hydration did not finish in " + timeoutMs + "ms, returning partial page");
+                    return Mono.empty();
+                })
+                .block();
+
+        return cards.stream()
+                .map(card -> new FullCardDtoForOutput(
+                        card.getId(),
+                        card.getTitle(),
+                        card.getText(),
+                        card.getCreateTime(),
+                        card.getTags(),
+                        images.getOrDefault(card.getId(), List.of()),
+                        Optional.ofNullable(authors.get(card.getUserId())).map(UserDtoRequest::name).orElse(null)))
+                .toList();
+    }
+
+    private Flux<Map<Long, List<ImageDto>>> requestImages(Map<Long, List<Long>> imagesIdByCard, String token) {
+        String url = apiService.buildUrl(
+                imageProperties.getPrefix(),
+                imageProperties.getHost(),
+                imageProperties.getPort(),
+                imageProperties.getEndpoints().getGetImagesBatch()
+        );
+
+        List<Map<Long, List<Long>>> batches = new ArrayList<>();
+        imagesIdByCard.forEach((cardId, imagesId) -> {
+            if (batches.isEmpty() || batches.get(batches.size() - 1).size() >= batchSize) {
+                batches.add(new HashMap<>());
+            }
+            batches.get(batches.size() - 1).put(cardId, imagesId);
+        });
+
+        return Flux.fromIterable(batches)
+                .flatMap(batch -> apiService.getCardsImagesAsync(batch, url, token, apiKey)
+                        .onErrorResume(e -> {
+                            log.warn("Images for cards " + batch.keySet() + " were not received: " + e.getMessage());
+                            return Mono.empty();
+                        }), concurrency);
+    }
+
+    private Flux<Map<Long, UserDtoRequest>> requestAuthors(List<Long> authorIds, String token) {
+        String url = apiService.buildUrl(
+                authenticationProperties.getPrefix(),
+                authenticationProperties.getHost(),
+                authenticationProperties.getPort(),
+                authenticationProperties.getEndpoints().getUsersBatch()
+        );
+
+        List<List<Long>> batches = new ArrayList<>();
+        for (int i = 0; i < authorIds.size(); i += batchSize) {
+            batches.add(authorIds.subList(i, Math.min(i + batchSize, authorIds.size())));
+        }
+
+        return Flux.fromIterable(batches)
+                .flatMap(batch -> apiService.getUsersByIdsAsync(url, token, batch, apiKey)
+                        .onErrorResume(e -> {
+                            log.warn("Authors " + batch + " were not received: " + e.getMessage());
+                            return Mono.empty();
+                        }), concurrency);
+    }
+}
@@ -1,25 +1,31 @@
 package karm.van.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.cache.HotKeyTracker;
+import karm.van.cache.NearCache;
+import karm.van.cache.RedisCache;
 import karm.van.config.properties.AuthenticationMicroServiceProperties;
 import karm.van.config.properties.CommentMicroServiceProperties;
 import karm.van.config.properties.ImageMicroServiceProperties;
+import karm.van.dto.card.CardCursor;
 import karm.van.dto.card.CardDto;
+import karm.van.dto.card.CardFeedIds;
+import karm.van.dto.card.CardFeedResponseDto;
+import karm.van.dto.card.CardIdsPage;
+import karm.van.dto.card.CardListingKey;
 import karm.van.dto.card.CardPageResponseDto;
 import karm.van.dto.card.ElasticPatchDto;
 import karm.van.dto.card.FullCardDtoForOutput;
 import karm.van.dto.comment.FullCommentDtoResponse;
-import karm.van.dto.complaint.ComplaintType;
-import karm.van.dto.image.ImageDto;
 import karm.van.dto.message.EmailDataDto;
 import karm.van.dto.rollBack.RollBackCommand;
 import karm.van.dto.user.UserDtoRequest;
+import karm.van.dto.user.UserPrincipal;
 import karm.van.exception.card.CardNotDeletedException;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.card.CardNotSavedException;
 import karm.van.exception.card.CardNotUnlinkException;
+import karm.van.exception.card.InvalidCursorException;
 import karm.van.exception.comment.CommentNotDeletedException;
 import karm.van.exception.image.ImageLimitException;
 import karm.van.exception.image.ImageNotDeletedException;
@@ -32,12 +38,14 @@ import karm.van.exception.user.UsernameNotFoundException;
 import karm.van.model.CardDocument;
 import karm.van.model.CardModel;
 import karm.van.repo.jpaRepo.CardRepo;
-import karm.van.repo.jpaRepo.ComplaintRepo;
+import karm.van.utils.AfterCommit;
+import karm.van.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.scheduling.annotation.Async;
@@ -53,15 +61,25 @@ import java.util.*;
 @RequiredArgsConstructor
 @Slf4j
 public class CardService {
+    // Поколение ключей листинга и поиска карточек
+    public static final String CARDS_NAMESPACE = "cards";
+
     private final CardRepo cardRepo;
-    private final RedisCommands<String,String> redisCommands;
+    private final RedisCache redisCache;
+    private final NearCache nearCache;
     private final ObjectMapper objectMapper;
     private final CommentMicroServiceProperties commentProperties;
     private final ImageMicroServiceProperties imageProperties;
     private final AuthenticationMicroServiceProperties authenticationProperties;
     private final ApiService apiService;
-    private final ComplaintRepo complaintRepo;
+    private final JwtService jwtService;
+    private final ComplaintService complaintService;
     private final BrokerProducer brokerProducer;
+    private final CardFragmentCache cardFragmentCache;
+    private final CardViewService cardViewService;
+    private final HotKeyTracker hotKeyTracker;
+    // Одновременные промахи по одному ключу кеша: в БД и другие сервисы идет только первый запрос
+    private final SingleFlight cacheLoads = new SingleFlight();
 
 
     @Value("${microservices.x-api-key}")
@@ -70,6 +88,9 @@ public class CardService {
     @Value("${card.images.count}")
     private int allowedImagesCount;
 
+    @Value("${card.feed.max-limit:100}")
+    private int maxFeedLimit;
+
     @Value("${email.settings.send}")
     private boolean send;
 
@@ -116,13 +137,7 @@ public class CardService {
     }
 
     void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authenticationProperties.getPrefix(),
-                        authenticationProperties.getHost(),
-                        authenticationProperties.getPort(),
-                        authenticationProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtService.validateAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
@@ -274,7 +289,7 @@ public class CardService {
                 throw new ImageLimitException("You have provided more than " + allowedImagesCount + " images");
             }
 
-            UserDtoRequest user = requestToGetUserByToken(token);
+            UserPrincipal user = jwtService.getPrincipal(token);
             CardModel cardModel = addCardText(cardDto);
             imageIds = requestToAddCardImages(files,token);
 
@@ -285,9 +300,12 @@ public class CardService {
 
             requestToLinkCardAndUser(cardModel,user.id());
             addCardIntoElastic(cardModel);
-            invalidatePaginationCaches();
+            AfterCommit.run(() -> {
+                invalidatePaginationCaches();
+                redisCache.adjustCount(CARDS_NAMESPACE, 1);
+            });
             if (send){
-                sendMessage(new EmailDataDto(user.email(),cardDto));
+                sendMessage(new EmailDataDto(requestToGetUserByToken(token).email(),cardDto));
             }
 
         } catch (ImageNotSavedException | ImageLimitException | UsernameNotFoundException | TokenNotExistException e) {
@@ -301,60 +319,11 @@ public class CardService {
             throw new RuntimeException("Unexpected error occurred", e);
         }
     }
-    //todo сделать кеширование в отдельном потоке, когда уже информация найдена и отдана
     public FullCardDtoForOutput getCard(Long id, String authorization) throws CardNotFoundException, SerializationException, TokenNotExistException, UsernameNotFoundException {
         String token = authorization.substring(7);
         checkToken(token);
-        String key = "card%d".formatted(id);
-        Long redisResult = redisCommands.exists(key);
-        if (redisResult==null || redisResult<=0) {//Если кеш отсутствует
-            return cacheCard(id,key,token);
-        } else {//Если кеш найден
-            try {
-                return objectMapper.readValue(redisCommands.get(key), FullCardDtoForOutput.class);//Десериализуем строку в объект и возвращаем
-            } catch (JsonProcessingException e) {
-                throw new SerializationException("an error occurred during serialization");
-            }
-        }
-    }
-
-    private List<ImageDto> requestToGetAllCardImages(CardModel card, String token){
-        String url = apiService.buildUrl(
-                imageProperties.getPrefix(),
-                imageProperties.getHost(),
-                imageProperties.getPort(),
-                imageProperties.getEndpoints().getGetImages()
-        );
-
-        return apiService.getCardImagesRequest(card.getImgIds(),url,token,apiKey);
-    }
-
-    private FullCardDtoForOutput cacheCard(Long cardId, String key, String token) throws CardNotFoundException, SerializationException, UsernameNotFoundException {
-        Optional<CardModel> cardModelOptional = cardRepo.getCardModelById(cardId);//Ищем запись в БД
-
-        if (cardModelOptional.isEmpty()) {//Если записи в БД нет
-            throw new CardNotFoundException("card with this id doesn't exist");//Ошибка о том, что карточки не существует
-        }
-
-        CardModel card = cardModelOptional.get();
-        String objectAsString;
-
-        List<ImageDto> images = requestToGetAllCardImages(card,token);
-
-        String userName = requestToGetUserById(token,card.getUserId()).name();
-
-        FullCardDtoForOutput fullCardDtoForOutput = new FullCardDtoForOutput(card.getId(),card.getTitle(),card.getText(),card.getCreateTime(),card.getTags(),images,userName);
-
-        try {
-            objectAsString = objectMapper.writeValueAsString(fullCardDtoForOutput);//Сериализуем объект в строку
-        } catch (Exception e) {
-            log.error("An error occurred during serialization for redis: "+e.getMessage());
-            throw new SerializationException("an error occurred during serialization");
-        }
-
-        redisCommands.set(key, objectAsString);//Кешируем объект
-        redisCommands.expire(key, 60);//Устанавливаем время жизни
-        return fullCardDtoForOutput;
+        // Карточка собирается с токеном вызывающего (автор, картинки), поэтому одна загрузка делится только между его запросами
+        return cacheLoads.execute(CardFragmentCache.cardKey(id) + ":" + token, () -> cardFragmentCache.getCard(id, token));
     }
 
     private void moveImagesToTrashBucket(List<Long> imagesId) throws ImageNotMovedException {
@@ -408,18 +377,15 @@ public class CardService {
 
     private void checkUserPermissions(String token, CardModel cardModel) throws UsernameNotFoundException, NotEnoughPermissionsException {
 
-        UserDtoRequest user;
+        UserPrincipal user;
 
         try {
-            user = requestToGetUserByToken(token);
+            user = jwtService.getPrincipal(token);
         }catch (UsernameNotFoundException e) {
             throw new UsernameNotFoundException("User with this token doesn't exist");
         }
 
-        Long userId = user.id();
-        List<String> userRoles = user.role();
-
-        if ( (!userId.equals(cardModel.getUserId())) && (userRoles.stream().noneMatch(role->role.equals("ADMIN"))) ){
+        if ( (!user.id().equals(cardModel.getUserId())) && !user.hasRole("ADMIN") ){
             throw new NotEnoughPermissionsException("You don't have permission to do this");
         }
     }
@@ -460,14 +426,10 @@ public class CardService {
     }
 
 
+    // Листинг и поиск строят ключи с текущим поколением, после INCR старые страницы просто истекают.
+    // Нужно только когда меняется состав страниц (добавление, удаление), правка карточки сбрасывает лишь ее ключ
     private void invalidatePaginationCaches() {
-        String tag = "cards_pagination";
-        Set<String> keys = redisCommands.smembers(tag);
-
-        if (!keys.isEmpty()) {
-            redisCommands.del(keys.toArray(new String[0]));
-            redisCommands.del(tag);
-        }
+        nearCache.nextGeneration(CARDS_NAMESPACE);
     }
 
     @Transactional
@@ -475,7 +437,7 @@ public class CardService {
         String token = authorization.substring(7);
         checkToken(token);
 
-        String key = String.format("card%d", cardId);
+        String key = CardFragmentCache.cardKey(cardId);
 
         CardModel cardModel = cardRepo.getCardModelById(cardId)
                 .orElseThrow(() -> new CardNotFoundException("Card with this id doesn't exist"));
@@ -484,11 +446,9 @@ public class CardService {
 
         checkUserPermissions(token,cardModel);
 
-        complaintRepo.deleteAllByTargetIdAndComplaintType(cardId, ComplaintType.CARD);
+        complaintService.deleteAllCardComplaints(cardId);
 
-        redisCommands.del(key);
-
-        List<Long> imagesId = cardModel.getImgIds();
+        List<Long> imagesId = cardModel.getImgIds() == null ? List.of() : cardModel.getImgIds();
         List<FullCommentDtoResponse> deletedComments = new ArrayList<>();
         try {
             requestToUnlinkCardFromUser(token,cardId);
@@ -499,8 +459,13 @@ public class CardService {
             requestToDeleteImagesFromMinio(imagesId);
 
             cardRepo.deleteById(cardId);
+            cardViewService.evict(cardId);
             delCardIntoElastic(cardModel);
-            invalidatePaginationCaches();
+            AfterCommit.run(() -> {
+                nearCache.evict(key);
+                invalidatePaginationCaches();
+                redisCache.adjustCount(CARDS_NAMESPACE, -1);
+            });
         } catch (ImageNotMovedException e) {
             rollBackCard(cardId,authorId);
             throw e;
@@ -520,64 +485,76 @@ public class CardService {
     }
 
 
-    private List<FullCardDtoForOutput> getFullCardsDto(String token, Page<CardModel> page){
-        return page.getContent().stream()
-                .map(card -> {
-                    try {
-                        return new FullCardDtoForOutput(
-                                card.getId(),
-                                card.getTitle(),
-                                card.getText(),
-                                card.getCreateTime(),
-                                card.getTags(),
-                                requestToGetAllCardImages(card,token),
-                                requestToGetUserById(token,card.getUserId()).name());
-                    } catch (UsernameNotFoundException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).toList();
-    }
-
-    public CardPageResponseDto cachingAndCreateDto(Page<CardModel> page, String token, String redisKey) throws SerializationException {
-        CardPageResponseDto cardPageResponseDto = new CardPageResponseDto(
-                getFullCardsDto(token,page),
-                page.isLast(),
-                page.getTotalPages(),
-                page.getTotalElements(),
-                page.isFirst(),
-                page.getNumberOfElements());
+    // В кеше страницы только id карточек, сами карточки собирает CardFragmentCache.
+    // Страница читается без count(*), общее количество - из счетчика и только если оно нужно клиенту
+    public CardPageResponseDto getAllCards(int pageNumber, int limit, boolean withTotal, String authorization) throws TokenNotExistException, SerializationException {
+        String token = authorization.substring(7);
+        checkToken(token);
 
-        try {
-            String objectAsString = objectMapper.writeValueAsString(cardPageResponseDto);
-            redisCommands.set(redisKey,objectAsString);
-            redisCommands.expire(redisKey,60);
-        } catch (JsonProcessingException e) {
-            throw new SerializationException("an error occurred during deserialization");
+        hotKeyTracker.record(CachePrewarmer.LISTINGS, new CardListingKey(pageNumber, limit));
+        CardIdsPage page = listingIds(pageNumber, limit);
+        if (withTotal) {
+            page = page.withTotalElements(countCards());
         }
+        return cardFragmentCache.toPage(page, limit, token);
+    }
+
+    private CardIdsPage listingIds(int pageNumber, int limit) {
+        String key = "pageNumber:"+pageNumber+":limit:"+limit+":gen:"+nearCache.generation(CARDS_NAMESPACE)+":slice";
+        return cacheLoads.execute(key, () -> nearCache.getOrLoad(key, CardIdsPage.class, () -> {
+            Slice<Long> ids = cardRepo.findSliceIds(PageRequest.of(pageNumber,limit));
+            return CardIdsPage.of(ids.getContent(), ids);
+        }));
+    }
 
-        return cardPageResponseDto;
+    // Прогрев (CachePrewarmer): страница id и карточки из витрины, без токена пользователя
+    public int prewarmListing(int pageNumber, int limit) {
+        return cardFragmentCache.prewarm(listingIds(pageNumber, limit).ids());
     }
 
+    public int prewarmFeedStart(int limit) {
+        return cardFragmentCache.prewarm(feedIds(null, limit).ids());
+    }
 
-    public CardPageResponseDto getAllCards(int pageNumber, int limit, String authorization) throws TokenNotExistException, SerializationException {
+    private long countCards() {
+        return redisCache.count(CARDS_NAMESPACE, cardRepo::count);
+    }
+
+    // Лента новых карточек по курсору: любая страница стоит как первая, общее количество считается только по запросу
+    public CardFeedResponseDto getCardFeed(String cursor, int limit, boolean withTotal, String authorization) throws TokenNotExistException, SerializationException, InvalidCursorException {
         String token = authorization.substring(7);
         checkToken(token);
 
-        String key = "pageNumber:"+pageNumber+":limit:"+limit;
-        Long redisResult = redisCommands.exists(key);
-        if (redisResult!=null && redisResult>0){
-            try {
-                return objectMapper.readValue(redisCommands.get(key), CardPageResponseDto.class);
-            } catch (JsonProcessingException e) {
-                throw new SerializationException("an error occurred during serialization");
-            }
-        }else {
-            Page<CardModel> page = cardRepo.findAll(PageRequest.of(pageNumber,limit));
-            CardPageResponseDto response = cachingAndCreateDto(page, token, key);
-            redisCommands.sadd("cards_pagination", key);  // Добавляем в тег ПОСЛЕ успешного кеширования
-            return response;
+        int size = Math.min(Math.max(limit, 1), maxFeedLimit);
+        CardCursor after = cursor == null || cursor.isBlank() ? null : CardCursor.decode(cursor);
+
+        if (after == null) {
+            hotKeyTracker.record(CachePrewarmer.FEEDS, size);
         }
+        CardFeedIds page = feedIds(after, size);
+
+        return new CardFeedResponseDto(
+                cardFragmentCache.getCards(page.ids(), token),
+                page.nextCursor(),
+                withTotal ? countCards() : null);
+    }
 
+    private CardFeedIds feedIds(CardCursor after, int size) {
+        String key = "feed:"+(after == null ? "start" : after.encode())+":limit:"+size+":gen:"+nearCache.generation(CARDS_NAMESPACE)+":ids";
+        return cacheLoads.execute(key, () -> nearCache.getOrLoad(key, CardFeedIds.class, () -> loadFeedIds(after, size)));
+    }
+
+    // Читается на одну карточку больше: по ней видно, есть ли следующая страница
+    private CardFeedIds loadFeedIds(CardCursor after, int size) {
+        List<CardCursor> keys = after == null
+                ? cardRepo.findFeedStart(Limit.of(size + 1))
+                : cardRepo.findFeedAfter(after.createTime(), after.id(), Limit.of(size + 1));
+
+        boolean hasNext = keys.size() > size;
+        List<CardCursor> pageKeys = hasNext ? keys.subList(0, size) : keys;
+        return new CardFeedIds(
+                pageKeys.stream().map(CardCursor::id).toList(),
+                hasNext ? pageKeys.get(size - 1).encode() : null);
     }
 
     @Async
@@ -595,7 +572,7 @@ public class CardService {
 
         checkUserPermissions(token,cardModel);
 
-        String key = "card%d".formatted(id);
+        String key = CardFragmentCache.cardKey(id);
         boolean cardChange = false;
 
         if (cardDtoOptional.isPresent()) {
@@ -603,18 +580,22 @@ public class CardService {
                 CardDto cardDto = cardDtoOptional.get();
                 addCardText(cardDto, cardModel);
                 cardModel.setTags(cardDto.tags());
+                // flush поднимает версию карточки, витрина получает уже ее
+                cardRepo.saveAndFlush(cardModel);
+                cardViewService.updateText(cardModel);
                 patchCardTextIntoElastic(id,cardDto);
                 cardChange = true;
             } catch (CardNotSavedException e) {
                 throw new CardNotSavedException(e.getMessage());
             }
         }
-        Long redisResult = redisCommands.exists(key);
-        if (cardChange && (redisResult!=null && redisResult>0)){
-            UserDtoRequest user = requestToGetUserByToken(token);
-            String redisProfileKey = "user_"+user.id();
-            redisCommands.del(key,redisProfileKey);
-            invalidatePaginationCaches();
+        if (cardChange) {
+            UserPrincipal user = jwtService.getPrincipal(token);
+            AfterCommit.run(() -> {
+                if (nearCache.evict(key) > 0) {
+                    redisCache.evict("user_"+user.id());
+                }
+            });
         }
 
         if (optFiles.isPresent()) {
@@ -623,15 +604,17 @@ public class CardService {
                     imageProperties.getPort(),
                     imageProperties.getEndpoints().getAddCardImages());
             try {
-                List<Long> imageIds = apiService.postRequestToAddCardImage(optFiles.get(), url, cardModel.getImgIds().size(),token,apiKey);
+                List<Long> currentImagesId = cardModel.getImgIds() == null ? new ArrayList<>() : new ArrayList<>(cardModel.getImgIds());
+                List<Long> imageIds = apiService.postRequestToAddCardImage(optFiles.get(), url, currentImagesId.size(),token,apiKey);
 
                 if (imageIds == null || imageIds.isEmpty()) {
                     throw new ImageNotSavedException("An error occurred and the images were not saved");
                 }else {
-                    List<Long> currentImagesId = cardModel.getImgIds();
-                    imageIds.parallelStream().forEach(currentImagesId::add);
+                    currentImagesId.addAll(imageIds);
                     cardModel.setImgIds(currentImagesId);
                     cardRepo.save(cardModel);
+                    cardViewService.evict(id);
+                    AfterCommit.run(() -> nearCache.evict(key));
                 }
             }catch (WebClientResponseException.BadRequest e){
                 throw new ImageLimitException("There is a maximum number of images in this ad");
@@ -667,16 +650,15 @@ public class CardService {
             throw new ImageNotDeletedException("Due to an error, the image was not deleted");
         }
 
-        card.getImgIds().remove(imageId);
-
-        String key = "card%d".formatted(cardId);
+        // Копия вместо правки на месте: список из БД может оказаться null или неизменяемым
+        List<Long> imagesId = card.getImgIds() == null ? new ArrayList<>() : new ArrayList<>(card.getImgIds());
+        imagesId.remove(imageId);
+        card.setImgIds(imagesId);
+        cardRepo.saveAndFlush(card);
+        cardViewService.removeImage(card, imageId);
 
-        Long redisResult = redisCommands.exists(key);
-        if (redisResult!=null && redisResult>0){
-            redisCommands.del(key);
-        }
-        
-        cardRepo.save(card);
+        String key = CardFragmentCache.cardKey(cardId);
+        AfterCommit.run(() -> nearCache.evict(key));
     }
 
     public Boolean checkApiKey(String apiKey){
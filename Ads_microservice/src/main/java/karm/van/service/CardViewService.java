@@ -0,0 +1,197 @@
+package karm.van.service;
+
+import karm.van.cache.NearCache;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.model.CardModel;
+import karm.van.model.CardView;
+import karm.van.repo.jpaRepo.CardRepo;
+import karm.van.repo.jpaRepo.CardViewRepo;
+import karm.van.utils.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+// Витрина карточек (card_view): карточка целиком, с именем автора и картинками, читается одним запросом.
+// Что известно самому Ads (текст, теги, удаление картинки), меняется в витрине сразу. Смена имени автора
+// приходит событием из сервиса аутентификации. Добавленные картинки требуют похода в сервис картинок,
+// поэтому строка просто удаляется и собирается заново при следующем чтении. Отдельного события от сервиса
+// картинок нет: картинки карточек меняются только через Ads. Каждая строка помнит версию карточки,
+// из которой собрана, и собранная из устаревшего чтения не записывается
+@Service
+@Slf4j
+public class CardViewService {
+    private final CardViewRepo cardViewRepo;
+    private final CardRepo cardRepo;
+    private final CardHydrationService cardHydrationService;
+    private final NearCache nearCache;
+    private final TransactionTemplate readOnlyTransaction;
+    private final TransactionTemplate transaction;
+
+    public CardViewService(CardViewRepo cardViewRepo, CardRepo cardRepo, CardHydrationService cardHydrationService,
+                           NearCache nearCache, PlatformTransactionManager transactionManager) {
+        this.cardViewRepo = cardViewRepo;
+        this.cardRepo = cardRepo;
+        this.cardHydrationService = cardHydrationService;
+        this.nearCache = nearCache;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    // Карточки и id недособранных среди них (сервис картинок или аутентификации не ответил): такие отдаются
+    // как есть, но ни в витрину, ни в кеш не попадают
+    public record Cards(List<FullCardDtoForOutput> cards, Set<Long> incomplete) {
+        public boolean isComplete(Long cardId) {
+            return !incomplete.contains(cardId);
+        }
+    }
+
+    // Карточки по id в любом порядке, удаленных в ответе нет. Карточки без строки в витрине
+    // (новые, с добавленными картинками, недособранные в прошлый раз) собираются и записываются в нее
+    public Cards getCards(Collection<Long> ids, String token) {
+        List<FullCardDtoForOutput> cards = new ArrayList<>();
+        Set<Long> missing = new LinkedHashSet<>(ids);
+        for (CardView view : cardViewRepo.findAllById(ids)) {
+            cards.add(view.toDto());
+            missing.remove(view.getId());
+        }
+
+        if (missing.isEmpty()) {
+            return new Cards(cards, Set.of());
+        }
+        Cards built = build(List.copyOf(missing), token);
+        cards.addAll(built.cards());
+        return new Cards(cards, built.incomplete());
+    }
+
+    // Только то, что уже есть в витрине, без сборки недостающих карточек
+    public List<FullCardDtoForOutput> getViews(Collection<Long> ids) {
+        return cardViewRepo.findAllById(ids).stream()
+                .map(CardView::toDto)
+                .toList();
+    }
+
+    // Карточка должна быть уже сохранена (flush), чтобы в ней была новая версия
+    @Transactional
+    public void updateText(CardModel card) {
+        cardViewRepo.findById(card.getId())
+                .filter(view -> isNotNewer(view, card))
+                .ifPresent(view -> {
+                    view.setTitle(card.getTitle());
+                    view.setText(card.getText());
+                    view.setTags(card.getTags() == null ? null : new ArrayList<>(card.getTags()));
+                    view.setCardVersion(card.getVersion());
+                });
+    }
+
+    @Transactional
+    public void removeImage(CardModel card, Long imageId) {
+        cardViewRepo.findById(card.getId())
+                .filter(view -> isNotNewer(view, card))
+                .ifPresent(view -> {
+                    view.setImages(view.getImages().stream()
+                            .filter(image -> !image.id().equals(imageId))
+                            .toList());
+                    view.setCardVersion(card.getVersion());
+                });
+    }
+
+    @Transactional
+    public void evict(Long cardId) {
+        cardViewRepo.deleteById(cardId);
+    }
+
+    // Имя автора меняется во всех его карточках одним UPDATE, кеш этих карточек сбрасывается после коммита
+    @Transactional
+    public void renameAuthor(Long userId, String authorName) {
+        List<Long> cardIds = cardViewRepo.findIdsByUserId(userId);
+        if (cardIds.isEmpty()) {
+            return;
+        }
+
+        cardViewRepo.updateAuthorName(userId, authorName);
+        String[] keys = cardIds.stream().map(CardFragmentCache::cardKey).toArray(String[]::new);
+        AfterCommit.run(() -> nearCache.evict(keys));
+        log.debug("Author name of {} cards of user {} was updated", cardIds.size(), userId);
+    }
+
+    // Карточки читаются в своей транзакции: сборка может идти в фоновом обновлении кеша, где сессии запроса нет.
+    // Картинки и авторы запрашиваются уже после нее, соединение с БД на время HTTP запросов не держится
+    private Cards build(List<Long> ids, String token) {
+        List<CardModel> cards = readOnlyTransaction.execute(status -> cardRepo.findAllById(ids));
+        if (cards == null || cards.isEmpty()) {
+            return new Cards(List.of(), Set.of());
+        }
+
+        List<FullCardDtoForOutput> built = cardHydrationService.toFullCardsDto(cards, token);
+
+        List<CardView> views = new ArrayList<>();
+        Set<Long> incomplete = new HashSet<>();
+        for (int i = 0; i < cards.size(); i++) {
+            CardModel card = cards.get(i);
+            FullCardDtoForOutput dto = built.get(i);
+            if (isComplete(card, dto)) {
+                views.add(toView(card, dto));
+            } else {
+                incomplete.add(card.getId());
+            }
+        }
+
+        try {
+            save(views);
+        } catch (RuntimeException e) {
+            // Например, ту же карточку одновременно записал другой запрос - соберется и так
+            log.warn("Card view was not saved: {}", e.getMessage());
+        }
+        return new Cards(built, incomplete);
+    }
+
+    // Пока шли запросы к картинкам и авторам, карточку могли изменить. Записываются только строки,
+    // версия карточки которых не сдвинулась, остальные соберутся заново при следующем чтении
+    private void save(List<CardView> views) {
+        if (views.isEmpty()) {
+            return;
+        }
+
+        transaction.executeWithoutResult(status -> {
+            Set<Long> unchanged = new HashSet<>(cardRepo.lockUnchanged(
+                    views.stream().map(CardView::getId).toArray(Long[]::new),
+                    views.stream().map(CardView::getCardVersion).toArray(Long[]::new)));
+            List<CardView> current = views.stream()
+                    .filter(view -> unchanged.contains(view.getId()))
+                    .toList();
+            if (current.size() < views.size()) {
+                log.debug("{} card views were built from outdated cards and were not saved", views.size() - current.size());
+            }
+            cardViewRepo.saveAll(current);
+        });
+    }
+
+    private static boolean isNotNewer(CardView view, CardModel card) {
+        return view.getCardVersion() == null || card.getVersion() == null || view.getCardVersion() <= card.getVersion();
+    }
+
+    // Есть имя автора (если он есть у карточки) и все ее картинки
+    static boolean isComplete(CardModel card, FullCardDtoForOutput dto) {
+        return (card.getUserId() == null || dto.authorName() != null)
+                && dto.images().size() == (card.getImgIds() == null ? 0 : card.getImgIds().size());
+    }
+
+    private static CardView toView(CardModel card, FullCardDtoForOutput dto) {
+        return CardView.builder()
+                .id(dto.id())
+                .title(dto.title())
+                .text(dto.text())
+                .createTime(dto.createTime())
+                .userId(card.getUserId())
+                .cardVersion(card.getVersion())
+                .authorName(dto.authorName())
+                .tags(dto.tags() == null ? null : new ArrayList<>(dto.tags()))
+                .images(dto.images())
+                .build();
+    }
+}
@@ -1,11 +1,11 @@
 package karm.van.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.cache.RedisCache;
 import karm.van.config.properties.AuthenticationMicroServiceProperties;
 import karm.van.dto.complaint.*;
 import karm.van.dto.user.UserDtoRequest;
+import karm.van.dto.user.UserPrincipal;
 import karm.van.exception.card.CardNotFoundException;
 import karm.van.exception.other.SerializationException;
 import karm.van.exception.other.TokenNotExistException;
@@ -14,51 +14,52 @@ import karm.van.exception.user.UsernameNotFoundException;
 import karm.van.model.Complaint;
 import karm.van.repo.jpaRepo.CardRepo;
 import karm.van.repo.jpaRepo.ComplaintRepo;
+import karm.van.utils.AfterCommit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ComplaintService {
+    private static final String COMPLAINTS_NAMESPACE = "complaints";
+    // Счетчики жалоб для пагинации: всех и по типу
+    private static final String ALL_COMPLAINTS_COUNT = "complaints:all";
+
     private final ComplaintRepo complaintRepo;
     private final ApiService apiService;
+    private final JwtService jwtService;
     private final AuthenticationMicroServiceProperties authProperties;
     private final CardRepo cardRepo;
-    private final RedisCommands<String,String> redisCommands;
-    private final ObjectMapper objectMapper;
+    private final RedisCache redisCache;
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
 
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authProperties.getPrefix(),
-                        authProperties.getHost(),
-                        authProperties.getPort(),
-                        authProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtService.validateAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
 
-    private UserDtoRequest requestToGetUserByToken(String token) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserByToken(apiService.buildUrl(
+    private UserDtoRequest requestToGetUserById(String token, Long userId) throws UsernameNotFoundException {
+        UserDtoRequest user = apiService.getUserById(apiService.buildUrl(
                 authProperties.getPrefix(),
                 authProperties.getHost(),
                 authProperties.getPort(),
                 authProperties.getEndpoints().getUser()
-        ), token,apiKey);
+        ), token,userId,apiKey);
 
         if (user == null) {
             throw new UsernameNotFoundException("User not found");
@@ -67,19 +68,13 @@ public class ComplaintService {
         return user;
     }
 
-    private UserDtoRequest requestToGetUserById(String token, Long userId) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserById(apiService.buildUrl(
+    private Map<Long, UserDtoRequest> requestToGetUsersByIds(String token, Collection<Long> userIds) {
+        return apiService.getUsersByIds(apiService.buildUrl(
                 authProperties.getPrefix(),
                 authProperties.getHost(),
                 authProperties.getPort(),
-                authProperties.getEndpoints().getUser()
-        ), token,userId,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
-
-        return user;
+                authProperties.getEndpoints().getUsersBatch()
+        ), token, userIds, apiKey);
     }
 
     @Transactional
@@ -106,86 +101,128 @@ public class ComplaintService {
             }
         }
 
-        UserDtoRequest user = requestToGetUserByToken(token);
-        complaint.setComplaintAuthorId(user.id());
+        UserPrincipal author = jwtService.getPrincipal(token);
+        complaint.setComplaintAuthorId(author.id());
 
         complaintRepo.save(complaint);
-        clearAllComplaintCache();
+        // Кеш и счетчики меняются только после коммита, иначе откат оставит их сдвинутыми
+        AfterCommit.run(() -> {
+            clearAllComplaintCache();
+            redisCache.adjustCount(ALL_COMPLAINTS_COUNT, 1);
+            redisCache.adjustCount(complaintsCount(complaintType), 1);
+        });
     }
 
-    public ComplaintPageResponseDto getComplaints(String authorization, int limit, int page, String complaintType) throws TokenNotExistException, SerializationException, JsonProcessingException, UsernameNotFoundException, NotEnoughPermissionsException {
+    // Страница читается и кешируется без count(*), общее количество берется из счетчика, если оно нужно клиенту
+    public ComplaintPageResponseDto getComplaints(String authorization, int limit, int page, String complaintType, boolean withTotal) throws TokenNotExistException, SerializationException, JsonProcessingException, UsernameNotFoundException, NotEnoughPermissionsException {
         String token = authorization.substring(7);
         checkToken(token);
         checkUserPermissions(token);
 
-        String redisKey = "complaints:"+page+":"+limit+":"+complaintType;
-
-        Long redisResult = redisCommands.exists(redisKey);
-        if (redisResult!=null && redisResult>0){
-            return objectMapper.readValue(redisCommands.get(redisKey),ComplaintPageResponseDto.class);
-        }else {
-            Page<Complaint> complaints = switch (complaintType.trim().toLowerCase()) {
-                case ("user") -> complaintRepo.findAllByComplaintType(PageRequest.of(page, limit), ComplaintType.USER);
-                case ("card") -> complaintRepo.findAllByComplaintType(PageRequest.of(page, limit), ComplaintType.CARD);
-                default -> complaintRepo.findAll(PageRequest.of(page, limit));
-            };
+        String redisKey = "complaints:"+page+":"+limit+":"+complaintType+":gen:"+redisCache.generation(COMPLAINTS_NAMESPACE)+":slice";
+
+        Optional<ComplaintType> type = switch (complaintType.trim().toLowerCase()) {
+            case ("user") -> Optional.of(ComplaintType.USER);
+            case ("card") -> Optional.of(ComplaintType.CARD);
+            default -> Optional.empty();
+        };
+
+        Optional<ComplaintPageResponseDto> cached = redisCache.get(redisKey, ComplaintPageResponseDto.class);
+        ComplaintPageResponseDto complaintPage;
+        if (cached.isPresent()){
+            complaintPage = cached.get();
+        } else {
+            Slice<Complaint> complaints = type
+                    .map(complaintsType -> complaintRepo.findAllByComplaintType(PageRequest.of(page, limit), complaintsType))
+                    .orElseGet(() -> complaintRepo.findAllBy(PageRequest.of(page, limit)));
+            complaintPage = cacheComplaints(redisKey,complaints,getComplaintsForCache(token,complaints));
+        }
 
-            return cacheComplaints(redisKey,complaints,getComplaintsForCache(token,complaints));
+        if (!withTotal) {
+            return complaintPage;
         }
+        long total = type
+                .map(complaintsType -> redisCache.count(complaintsCount(complaintsType), () -> complaintRepo.countByComplaintType(complaintsType)))
+                .orElseGet(() -> redisCache.count(ALL_COMPLAINTS_COUNT, complaintRepo::count));
+        return new ComplaintPageResponseDto(
+                complaintPage.complaints(),
+                complaintPage.last(),
+                (int) Math.ceil((double) total / limit),
+                total,
+                complaintPage.first(),
+                complaintPage.numberOfElements());
+    }
+
+    private static String complaintsCount(ComplaintType complaintType) {
+        return "complaints:" + complaintType.name().toLowerCase();
+    }
+
+    // Массовое удаление: сколько жалоб каждого типа ушло, неизвестно, счетчики просто пересчитаются
+    private void clearAllComplaintCounts() {
+        redisCache.evictCount(ALL_COMPLAINTS_COUNT, complaintsCount(ComplaintType.USER), complaintsCount(ComplaintType.CARD));
     }
 
+    @Transactional
+    public void deleteAllCardComplaints(Long cardId) {
+        complaintRepo.deleteAllByTargetIdAndComplaintType(cardId, ComplaintType.CARD);
+        AfterCommit.run(() -> {
+            clearAllComplaintCache();
+            clearAllComplaintCounts();
+        });
+    }
+
+    // Страницы жалоб строятся с текущим поколением, после INCR старые просто истекают
     private void clearAllComplaintCache() {
-        List<String> keys = redisCommands.keys("complaints:*");
-        if (keys != null && !keys.isEmpty()) {
-            redisCommands.del(keys.toArray(new String[0]));
-        }
+        redisCache.nextGeneration(COMPLAINTS_NAMESPACE);
     }
 
-    private List<AbstractComplaint> getComplaintsForCache(String token, Page<Complaint> complaints){
-        ConcurrentLinkedQueue<AbstractComplaint> complaintList = new ConcurrentLinkedQueue<>();
+    private List<AbstractComplaint> getComplaintsForCache(String token, Slice<Complaint> complaints){
+        List<Long> userIds = new ArrayList<>();
+        complaints.forEach(complaint -> {
+            userIds.add(complaint.getComplaintAuthorId());
+            if (complaint.getComplaintType() == ComplaintType.USER) {
+                userIds.add(complaint.getTargetId());
+            }
+        });
+
+        Map<Long, UserDtoRequest> users = requestToGetUsersByIds(token, userIds);
+
+        List<AbstractComplaint> complaintList = new ArrayList<>();
 
         complaints.forEach(complaint -> {
             ComplaintType target = complaint.getComplaintType();
-            try {
-                UserDtoRequest complaintAuthor = requestToGetUserById(token, complaint.getComplaintAuthorId());
-
-                if (target == ComplaintType.USER) {
-                    UserDtoRequest badUser = requestToGetUserById(token, complaint.getTargetId());
-                    UserComplaintDtoResponse userComplaintDtoResponse =
-                            new UserComplaintDtoResponse(badUser.name(), complaint.getReason(), complaintAuthor.name(), complaint.getId());
-                    complaintList.add(userComplaintDtoResponse);
-                } else if (target == ComplaintType.CARD) {
-                    CardComplaintDtoResponse cardComplaintDtoResponse =
-                            new CardComplaintDtoResponse(complaint.getTargetId(), complaint.getReason(), complaintAuthor.name(), complaint.getId());
-                    complaintList.add(cardComplaintDtoResponse);
+            UserDtoRequest complaintAuthor = users.get(complaint.getComplaintAuthorId());
+
+            if (complaintAuthor == null) {
+                log.error("Author of complaint " + complaint.getId() + " not found");
+                return;
+            }
+
+            if (target == ComplaintType.USER) {
+                UserDtoRequest badUser = users.get(complaint.getTargetId());
+                if (badUser == null) {
+                    log.error("Target of complaint " + complaint.getId() + " not found");
+                    return;
                 }
-            } catch (Exception e) {
-                log.error(e.getClass() + " : " + e.getMessage());
+                complaintList.add(new UserComplaintDtoResponse(badUser.name(), complaint.getReason(), complaintAuthor.name(), complaint.getId()));
+            } else if (target == ComplaintType.CARD) {
+                complaintList.add(new CardComplaintDtoResponse(complaint.getTargetId(), complaint.getReason(), complaintAuthor.name(), complaint.getId()));
             }
         });
 
-        return new ArrayList<>(complaintList);
+        return complaintList;
     }
 
-    private ComplaintPageResponseDto cacheComplaints(String key, Page<Complaint> page, List<AbstractComplaint> complaints) throws SerializationException {
-        String objectAsString;
-
+    private ComplaintPageResponseDto cacheComplaints(String key, Slice<Complaint> page, List<AbstractComplaint> complaints) throws SerializationException {
         ComplaintPageResponseDto complaintPageResponseDto = new ComplaintPageResponseDto(
                 complaints,
                 page.isLast(),
-                page.getTotalPages(),
-                page.getTotalElements(),
+                null,
+                null,
                 page.isFirst(),
                 page.getNumberOfElements());
 
-        try {
-            objectAsString = objectMapper.writeValueAsString(complaintPageResponseDto);
-        } catch (JsonProcessingException e) {
-            throw new SerializationException("an error occurred during deserialization");
-        }
-
-        redisCommands.set(key,objectAsString);
-        redisCommands.expire(key,60);
+        redisCache.put(key, complaintPageResponseDto);
 
         return complaintPageResponseDto;
     }
@@ -204,23 +241,24 @@ public class ComplaintService {
 
         complaintRepo.deleteAllByTargetIdAndComplaintType(userId,ComplaintType.USER);
         complaintRepo.deleteAllByComplaintAuthorId(userId);
-        clearAllComplaintCache();
+        AfterCommit.run(() -> {
+            clearAllComplaintCache();
+            clearAllComplaintCounts();
+        });
 
     }
 
     private void checkUserPermissions(String token) throws UsernameNotFoundException, NotEnoughPermissionsException {
 
-        UserDtoRequest user;
+        UserPrincipal user;
 
         try {
-            user = requestToGetUserByToken(token);
+            user = jwtService.getPrincipal(token);
         }catch (UsernameNotFoundException e) {
             throw new UsernameNotFoundException("User with this token doesn't exist");
         }
 
-        List<String> userRoles = user.role();
-
-        if (userRoles.stream().noneMatch(role->role.equals("ADMIN"))){
+        if (!user.hasRole("ADMIN")){
             throw new NotEnoughPermissionsException("You don't have permission to do this");
         }
     }
@@ -231,8 +269,16 @@ public class ComplaintService {
         checkToken(token);
         checkUserPermissions(token);
 
-        complaintRepo.deleteById(complaintId);
-        clearAllComplaintCache();
+        Optional<Complaint> complaint = complaintRepo.findById(complaintId);
+        if (complaint.isPresent()) {
+            complaintRepo.delete(complaint.get());
+            ComplaintType complaintType = complaint.get().getComplaintType();
+            AfterCommit.run(() -> {
+                clearAllComplaintCache();
+                redisCache.adjustCount(ALL_COMPLAINTS_COUNT, -1);
+                redisCache.adjustCount(complaintsCount(complaintType), -1);
+            });
+        }
 
     }
 }
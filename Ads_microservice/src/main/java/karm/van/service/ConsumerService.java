@@ -2,6 +2,7 @@ package karm.van.service;
 
 import karm.van.dto.card.CardDto;
 import karm.van.dto.card.ElasticPatchDto;
+import karm.van.dto.message.UserRenamedEvent;
 import karm.van.dto.rollBack.RollBackCommand;
 import karm.van.model.CardDocument;
 import karm.van.model.CardModel;
@@ -26,6 +27,7 @@ import java.util.Map;
 public class ConsumerService {
     private final ElasticRepo elasticRepo;
     private final Map<String, RollbackHandler> handlers;
+    private final CardViewService cardViewService;
 
     @Transactional
     @Retryable(backoff = @Backoff(delay = 10000))
@@ -85,6 +87,12 @@ public class ConsumerService {
 
     }
 
+    @Retryable(backoff = @Backoff(delay = 10000))
+    @RabbitListener(queues = "${rabbitmq.queue.user-renamed.name}")
+    public void userRenamedConsume(UserRenamedEvent event) {
+        cardViewService.renameAuthor(event.userId(), event.name());
+    }
+
     @Retryable(backoff = @Backoff(delay = 10000))
     @RabbitListener(queues = "${rabbitmq.queue.rollback.name}")
     public void rollBack(RollBackCommand command) {
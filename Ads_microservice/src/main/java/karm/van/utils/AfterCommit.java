@@ -0,0 +1,26 @@
+package karm.van.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Побочные эффекты в кеше (удаление ключей, смена поколения, сдвиг счетчиков) - только после коммита.
+// Иначе запрос между удалением ключа и коммитом снова закеширует старые данные, а откат оставит кеш
+// и счетчики сдвинутыми. Вне транзакции действие выполняется сразу
+public final class AfterCommit {
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
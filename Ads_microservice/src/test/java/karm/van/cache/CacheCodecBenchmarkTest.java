@@ -0,0 +1,117 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import karm.van.dto.card.CardPageResponseDto;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.dto.image.ImageDto;
+import karm.van.exception.other.SerializationException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Размер и время кодирования/декодирования страницы карточек (20 штук, как на главной) в каждом формате кеша, с LZ4 и без.
+// По умолчанию не запускается, запуск: mvn -pl Ads_microservice test -Dgroups=benchmark -DexcludedGroups=none -Dtest=CacheCodecBenchmarkTest
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmarkTest {
+    private static final int THRESHOLD_BYTES = 1024;
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    public CacheFormat format;
+
+    @Param({"false", "true"})
+    public boolean compression;
+
+    private CacheSerializer<CardPageResponseDto> serializer;
+    private CardPageResponseDto page;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws SerializationException {
+        serializer = serializer(format, compression);
+        page = page(20);
+        encoded = serializer.serialize(page);
+    }
+
+    @Benchmark
+    public byte[] encode() throws SerializationException {
+        return serializer.serialize(page);
+    }
+
+    @Benchmark
+    public CardPageResponseDto decode() throws SerializationException {
+        return serializer.deserialize(encoded);
+    }
+
+    @Test
+    void compareFormats() throws SerializationException, RunnerException {
+        CardPageResponseDto page = page(20);
+        for (CacheFormat format : CacheFormat.values()) {
+            for (boolean compression : new boolean[]{false, true}) {
+                CacheSerializer<CardPageResponseDto> serializer = serializer(format, compression);
+                byte[] value = serializer.serialize(page);
+                assertEquals(page, serializer.deserialize(value));
+                System.out.printf("%-5s lz4=%-5s %6d bytes%n", format, compression, value.length);
+            }
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(CacheCodecBenchmarkTest.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+    private static CacheSerializer<CardPageResponseDto> serializer(CacheFormat format, boolean compression) {
+        ObjectMapper mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        JavaType type = mapper.constructType(CardPageResponseDto.class);
+        return new JacksonCacheSerializer<>(format.mapper(mapper), type, new CacheCompression(compression, THRESHOLD_BYTES));
+    }
+
+    private static CardPageResponseDto page(int size) {
+        List<FullCardDtoForOutput> cards = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            cards.add(new FullCardDtoForOutput(
+                    id,
+                    "Looking for a backend developer #" + id,
+                    ("We are building a marketplace for small teams and need someone comfortable with Spring Boot, "
+                            + "PostgreSQL and Redis. Remote work, flexible hours, card " + id + ". ").repeat(3),
+                    LocalDate.of(2024, 10, 1).plusDays(id),
+                    List.of("java", "spring", "backend", "remote"),
+                    List.of(new ImageDto(id * 10, "images", "card-" + id + "-cover.jpg"),
+                            new ImageDto(id * 10 + 1, "images", "card-" + id + "-screenshot-1.png"),
+                            new ImageDto(id * 10 + 2, "images", "card-" + id + "-screenshot-2.png")),
+                    "author" + (id % 5)));
+        }
+        return new CardPageResponseDto(cards, false, 50, 1000L, false, size);
+    }
+}
@@ -0,0 +1,73 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.config.properties.CacheProperties;
+import karm.van.dto.card.CardListingKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HotKeyTrackerTest {
+    private RedisCommands<String, String> redisCommands;
+    private HotKeyTracker hotKeyTracker;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisCommands = mock(RedisCommands.class);
+        CacheProperties properties = new CacheProperties();
+        properties.getPrewarm().setHotKeysTtlSeconds(60);
+        hotKeyTracker = new HotKeyTracker(redisCommands, new ObjectMapper(), properties);
+    }
+
+    @Test
+    void flushSendsAllCountersOfFamilyInOneScript() {
+        hotKeyTracker.record("listings", new CardListingKey(0, 10));
+        hotKeyTracker.record("listings", new CardListingKey(0, 10));
+        hotKeyTracker.record("listings", new CardListingKey(1, 10));
+
+        hotKeyTracker.flush();
+
+        ArgumentCaptor<String[]> args = ArgumentCaptor.forClass(String[].class);
+        verify(redisCommands, times(1)).eval(anyString(), eq(ScriptOutputType.INTEGER),
+                eq(new String[]{"v3:hot:listings"}), args.capture());
+        List<String> values = List.of(args.getValue());
+        assertEquals("60", values.get(0));
+        // Пары прирост - member, порядок ключей в памяти не задан
+        assertEquals(5, values.size());
+        assertEquals("2", values.get(values.indexOf("{\"pageNumber\":0,\"limit\":10}") - 1));
+        assertEquals("1", values.get(values.indexOf("{\"pageNumber\":1,\"limit\":10}") - 1));
+        verify(redisCommands, never()).zincrby(anyString(), any(Double.class), anyString());
+    }
+
+    @Test
+    void flushedCountersAreNotSentAgain() {
+        hotKeyTracker.record("feeds", 20);
+        hotKeyTracker.flush();
+        hotKeyTracker.flush();
+
+        verify(redisCommands, times(1)).eval(anyString(), any(ScriptOutputType.class), any(String[].class), any(String[].class));
+    }
+
+    @Test
+    void topKeysAreReadInRedisOrder() {
+        when(redisCommands.zrevrange("v3:hot:feeds", 0, 1)).thenReturn(List.of("50", "20"));
+
+        assertArrayEquals(new Integer[]{50, 20}, hotKeyTracker.top("feeds", 2, Integer.class).toArray());
+    }
+}
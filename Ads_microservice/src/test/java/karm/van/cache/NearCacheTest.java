@@ -0,0 +1,99 @@
+package karm.van.cache;
+
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.sync.RedisPubSubCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NearCacheTest {
+    private RedisCache redisCache;
+    private RedisCommands<String, String> redisCommands;
+    private RedisPubSubListener<String, String> pubSubListener;
+    private NearCache nearCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisCache = mock(RedisCache.class);
+        redisCommands = mock(RedisCommands.class);
+        StatefulRedisPubSubConnection<String, String> pubSubConnection = mock(StatefulRedisPubSubConnection.class);
+        when(pubSubConnection.sync()).thenReturn(mock(RedisPubSubCommands.class));
+
+        nearCache = new NearCache(redisCache, redisCommands, pubSubConnection, new SimpleMeterRegistry(), 100, 60_000);
+        nearCache.subscribe();
+
+        ArgumentCaptor<RedisPubSubListener<String, String>> listener = ArgumentCaptor.forClass(RedisPubSubListener.class);
+        verify(pubSubConnection).addListener(listener.capture());
+        pubSubListener = listener.getValue();
+    }
+
+    @Test
+    void generationIsReadFromRedisOnce() {
+        when(redisCache.generation("cards")).thenReturn(4L);
+
+        assertEquals(4, nearCache.generation("cards"));
+        assertEquals(4, nearCache.generation("cards"));
+
+        verify(redisCache, times(1)).generation("cards");
+    }
+
+    @Test
+    void nextGenerationIsUsedRightAwayAndBroadcast() {
+        when(redisCache.generation("cards")).thenReturn(4L);
+        when(redisCache.nextGeneration("cards")).thenReturn(5L);
+        nearCache.generation("cards");
+
+        nearCache.nextGeneration("cards");
+
+        // Новые ключи листинга строятся уже с новым поколением, старые больше не читаются
+        assertEquals(5, nearCache.generation("cards"));
+        verify(redisCommands).publish(NearCache.INVALIDATION_CHANNEL, "gen:cards");
+    }
+
+    @Test
+    void generationChangedByAnotherReplicaIsReadAgain() {
+        when(redisCache.generation("cards")).thenReturn(4L, 5L);
+        assertEquals(4, nearCache.generation("cards"));
+
+        pubSubListener.message(NearCache.INVALIDATION_CHANNEL, "gen:cards");
+
+        assertEquals(5, nearCache.generation("cards"));
+    }
+
+    @Test
+    void listenersRunAfterLocalGenerationChangeOnly() {
+        AtomicInteger calls = new AtomicInteger();
+        nearCache.onNextGeneration("cards", calls::incrementAndGet);
+
+        nearCache.nextGeneration("cards");
+        // Смена поколения в другой реплике: прогрев запускает та реплика, а не эта
+        pubSubListener.message(NearCache.INVALIDATION_CHANNEL, "gen:cards");
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void otherNamespacesKeepTheirGeneration() {
+        when(redisCache.generation("cards")).thenReturn(4L);
+        when(redisCache.generation("complaints")).thenReturn(9L);
+        when(redisCache.nextGeneration("complaints")).thenReturn(10L);
+        nearCache.generation("cards");
+
+        nearCache.nextGeneration("complaints");
+
+        assertEquals(4, nearCache.generation("cards"));
+        verify(redisCache, times(1)).generation("cards");
+    }
+}
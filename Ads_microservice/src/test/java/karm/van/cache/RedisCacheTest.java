@@ -0,0 +1,229 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import karm.van.config.properties.CacheProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RedisCacheTest {
+    private RedisCommands<String, byte[]> redisCommands;
+    private RedisCache redisCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisCommands = mock(RedisCommands.class);
+        // Блокировка пересборки всегда берется
+        when(redisCommands.set(anyString(), any(byte[].class), any(SetArgs.class))).thenReturn("OK");
+        redisCache = cache(new CacheProperties());
+    }
+
+    private RedisCache cache(CacheProperties properties) {
+        // Запись после ответа и фоновое обновление выполняются сразу в вызывающем потоке - проверять можно без ожиданий
+        properties.getWriteBehind().setEnabled(false);
+        return new RedisCache(redisCommands, new ObjectMapper(), properties, Runnable::run, new SimpleMeterRegistry());
+    }
+
+    // Значение в том виде, в котором его записал кеш: заголовок (устаревание, время сборки) и Smile
+    private byte[] stored(RedisCache cache, String key, CacheLoader<String, RuntimeException> loader) {
+        cache.getOrLoad(key, String.class, loader);
+        ArgumentCaptor<byte[]> value = ArgumentCaptor.forClass(byte[].class);
+        verify(redisCommands, atLeastOnce()).set(eq("v3:" + key), value.capture(), any(SetArgs.class));
+        clearInvocations(redisCommands);
+        return value.getValue();
+    }
+
+    private byte[] stale(String key, String value) throws Exception {
+        redisCache.put(key, value, redisCache.serializer(String.class), Duration.ZERO);
+        ArgumentCaptor<byte[]> stored = ArgumentCaptor.forClass(byte[].class);
+        verify(redisCommands).set(eq("v3:" + key), stored.capture(), any(SetArgs.class));
+        clearInvocations(redisCommands);
+        return stored.getValue();
+    }
+
+    @Test
+    void evictionIsVisibleOnlyAfterTheEpoch() {
+        long before = redisCache.evictionEpoch();
+
+        redisCache.evict("card1");
+
+        assertTrue(redisCache.evictedSince("card1", before));
+        assertFalse(redisCache.evictedSince("card1", redisCache.evictionEpoch()));
+    }
+
+    @Test
+    void putAllBehindSkipsKeysEvictedAfterTheyWereRead() {
+        long since = redisCache.evictionEpoch();
+        redisCache.evict("card1");
+
+        redisCache.putAllBehind(Map.of("card1", "before patch"), String.class, since);
+
+        verify(redisCommands, never()).eval(anyString(), any(ScriptOutputType.class), any(String[].class), any(byte[][].class));
+    }
+
+    @Test
+    void loadedValueIsNotWrittenWhenKeyWasEvictedDuringLoad() {
+        String value = redisCache.getOrLoad("card1", String.class, () -> {
+            // Правка карточки закоммитилась, пока собиралось старое значение
+            redisCache.evict("card1");
+            return "before patch";
+        });
+
+        assertEquals("before patch", value);
+        verify(redisCommands, never()).set(eq("v3:card1"), any(byte[].class), any(SetArgs.class));
+    }
+
+    @Test
+    void loadedValueIsWrittenWithoutEviction() {
+        redisCache.getOrLoad("card1", String.class, () -> "fresh");
+
+        verify(redisCommands).set(eq("v3:card1"), any(byte[].class), any(SetArgs.class));
+    }
+
+    @Test
+    void countIsReadFromRedisWithoutQuery() {
+        when(redisCommands.get("v3:count:cards")).thenReturn("42".getBytes(StandardCharsets.US_ASCII));
+
+        long count = redisCache.count("cards", () -> {
+            throw new AssertionError("count(*) should not run");
+        });
+
+        assertEquals(42, count);
+    }
+
+    @Test
+    void missingCountIsStoredOnlyIfStillAbsent() {
+        long count = redisCache.count("cards", () -> 7L);
+
+        assertEquals(7, count);
+        // NX: значение, которое успел сдвинуть adjustCount другого запроса, не перетирается
+        verify(redisCommands).set(eq("v3:count:cards"), eq("7".getBytes(StandardCharsets.US_ASCII)), any(SetArgs.class));
+    }
+
+    @Test
+    void adjustCountShiftsOnlyExistingCounter() {
+        redisCache.adjustCount("cards", -1);
+
+        // Скрипт делает INCRBY только при EXISTS: без ключа счетчик не создается со значением -1
+        ArgumentCaptor<String> script = ArgumentCaptor.forClass(String.class);
+        verify(redisCommands).eval(script.capture(), eq(ScriptOutputType.INTEGER), eq(new String[]{"v3:count:cards"}),
+                eq("-1".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(script.getValue().contains("EXISTS"));
+    }
+
+    @Test
+    void evictCountDeletesAllCounters() {
+        redisCache.evictCount("complaints", "complaints:user");
+
+        verify(redisCommands).del("v3:count:complaints", "v3:count:complaints:user");
+    }
+
+    @Test
+    void staleValueIsServedWhileRefreshedInBackground() throws Exception {
+        byte[] stale = stale("card1", "old");
+        when(redisCommands.get("v3:card1")).thenReturn(stale);
+
+        String value = redisCache.getOrLoad("card1", String.class, () -> "new");
+
+        assertEquals("old", value);
+        // Фоновая пересборка под блокировкой записала новое значение
+        verify(redisCommands).set(eq("v3:lock:card1"), any(byte[].class), any(SetArgs.class));
+        verify(redisCommands).set(eq("v3:card1"), any(byte[].class), any(SetArgs.class));
+    }
+
+    @Test
+    void staleValueIsNotRefreshedWhileAnotherReplicaHoldsTheLock() throws Exception {
+        byte[] stale = stale("card1", "old");
+        when(redisCommands.get("v3:card1")).thenReturn(stale);
+        when(redisCommands.set(eq("v3:lock:card1"), any(byte[].class), any(SetArgs.class))).thenReturn(null);
+
+        String value = redisCache.getOrLoad("card1", String.class, () -> {
+            throw new AssertionError("the key is refreshed by another replica");
+        });
+
+        assertEquals("old", value);
+        verify(redisCommands, never()).set(eq("v3:card1"), any(byte[].class), any(SetArgs.class));
+    }
+
+    @Test
+    void freshValueIsServedWithoutLoad() {
+        byte[] fresh = stored(redisCache, "card1", () -> "cached");
+        when(redisCommands.get("v3:card1")).thenReturn(fresh);
+
+        String value = redisCache.getOrLoad("card1", String.class, () -> {
+            throw new AssertionError("fresh value should not be rebuilt");
+        });
+
+        assertEquals("cached", value);
+    }
+
+    @Test
+    void slowToBuildValueIsRefreshedBeforeItGetsStale() {
+        CacheProperties properties = new CacheProperties();
+        // Сборка в 20 мс при таком beta "длиннее" любого TTL - XFetch обновляет досрочно
+        properties.getRefresh().setBeta(1_000_000);
+        RedisCache cache = cache(properties);
+        byte[] fresh = stored(cache, "card1", () -> {
+            sleep(20);
+            return "cached";
+        });
+        when(redisCommands.get("v3:card1")).thenReturn(fresh);
+
+        assertEquals("cached", cache.getOrLoad("card1", String.class, () -> "rebuilt"));
+        verify(redisCommands).set(eq("v3:card1"), any(byte[].class), any(SetArgs.class));
+    }
+
+    @Test
+    void missWaitsForValueBuiltUnderAnotherLock() {
+        byte[] built = stored(cache(new CacheProperties()), "card1", () -> "built by other");
+        when(redisCommands.set(eq("v3:lock:card1"), any(byte[].class), any(SetArgs.class))).thenReturn(null);
+        // Первый GET - промах, следующий уже видит значение соседа
+        when(redisCommands.get("v3:card1")).thenReturn(null, built);
+
+        String value = redisCache.getOrLoad("card1", String.class, () -> {
+            throw new AssertionError("the key is built by another request");
+        });
+
+        assertEquals("built by other", value);
+    }
+
+    @Test
+    void missLoadsItselfWhenLockHolderIsTooSlow() {
+        CacheProperties properties = new CacheProperties();
+        properties.getRefresh().setLockWaitMs(100);
+        RedisCache cache = cache(properties);
+        when(redisCommands.set(eq("v3:lock:card1"), any(byte[].class), any(SetArgs.class))).thenReturn(null);
+
+        assertEquals("own", cache.getOrLoad("card1", String.class, () -> "own"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
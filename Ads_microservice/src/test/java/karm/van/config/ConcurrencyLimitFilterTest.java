@@ -0,0 +1,109 @@
+package karm.van.config;
+
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyLimitFilterTest {
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1);
+
+    @Test
+    void requestOverLimitWaitsForFreeSlot() throws Exception {
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger processed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = executor.submit(() -> {
+                filter.doFilter(request("/card/get"), new MockHttpServletResponse(), (req, res) -> {
+                    processing.countDown();
+                    await(release);
+                    processed.incrementAndGet();
+                });
+                return null;
+            });
+            assertTrue(processing.await(5, TimeUnit.SECONDS));
+
+            Future<?> second = executor.submit(() -> {
+                filter.doFilter(request("/card/get"), new MockHttpServletResponse(), (req, res) -> processed.incrementAndGet());
+                return null;
+            });
+            // Пока первый запрос обрабатывается, второй ждет
+            Thread.sleep(200);
+            assertFalse(second.isDone());
+
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            assertEquals(2, processed.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void slotIsReleasedWhenRequestFails() throws Exception {
+        try {
+            filter.doFilter(request("/card/get"), new MockHttpServletResponse(), (req, res) -> {
+                throw new IllegalStateException("handler failed");
+            });
+        } catch (IllegalStateException ignored) {
+        }
+
+        AtomicInteger processed = new AtomicInteger();
+        filter.doFilter(request("/card/get"), new MockHttpServletResponse(), (req, res) -> processed.incrementAndGet());
+
+        assertEquals(1, processed.get());
+    }
+
+    @Test
+    void healthChecksAreNotQueued() throws Exception {
+        CountDownLatch processing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                filter.doFilter(request("/card/get"), new MockHttpServletResponse(), (req, res) -> {
+                    processing.countDown();
+                    await(release);
+                });
+                return null;
+            });
+            // Единственное место занято
+            assertTrue(processing.await(5, TimeUnit.SECONDS));
+
+            AtomicInteger processed = new AtomicInteger();
+            filter.doFilter(request("/actuator/health"), new MockHttpServletResponse(), (req, res) -> processed.incrementAndGet());
+
+            assertEquals(1, processed.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws ServletException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new ServletException(e);
+        }
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        return new MockHttpServletRequest("GET", uri);
+    }
+}
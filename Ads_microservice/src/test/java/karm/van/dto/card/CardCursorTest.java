@@ -0,0 +1,42 @@
+package karm.van.dto.card;
+
+import karm.van.exception.card.InvalidCursorException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CardCursorTest {
+
+    @Test
+    void decodedCursorIsTheEncodedOne() throws Exception {
+        CardCursor cursor = new CardCursor(LocalDate.of(2024, 10, 11), 15L);
+
+        assertEquals(cursor, CardCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new CardCursor(LocalDate.of(2024, 10, 11), Long.MAX_VALUE).encode();
+
+        assertFalse(encoded.contains("+") || encoded.contains("/") || encoded.contains("="), encoded);
+    }
+
+    @Test
+    void invalidCursorsAreRejected() {
+        assertThrows(InvalidCursorException.class, () -> CardCursor.decode("not base64!"));
+        assertThrows(InvalidCursorException.class, () -> CardCursor.decode(encode("2024-10-11")));
+        assertThrows(InvalidCursorException.class, () -> CardCursor.decode(encode("2024-13-45_15")));
+        assertThrows(InvalidCursorException.class, () -> CardCursor.decode(encode("2024-10-11_abc")));
+        assertThrows(InvalidCursorException.class, () -> CardCursor.decode(""));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,89 @@
+package karm.van.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import karm.van.model.CardModel;
+import karm.van.repo.jpaRepo.CardRepo;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Страница из 50 карточек вместе с тегами и картинками читается одним запросом: теги и картинки - массивы в строке карточки
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+public class CardFetchPlanTest {
+    private static final int PAGE_SIZE = 50;
+    private static final long USER_ID = -50L;
+
+    @Autowired
+    private CardRepo cardRepo;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private List<Long> cardIds;
+
+    @BeforeEach
+    void saveCards() {
+        cardIds = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            CardModel card = CardModel.builder()
+                    .title("title " + i)
+                    .text("text " + i)
+                    .createTime(LocalDate.now())
+                    .userId(USER_ID)
+                    .tags(new ArrayList<>(List.of("java", "spring")))
+                    .imgIds(new ArrayList<>(List.of(i * 10L, i * 10L + 1)))
+                    .build();
+            cardIds.add(cardRepo.save(card).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void findAllByIdLoadsCardsWithArraysInOneStatement() {
+        Statistics statistics = statistics();
+
+        List<CardModel> cards = cardRepo.findAllById(cardIds);
+        cards.forEach(CardFetchPlanTest::touchCollections);
+
+        assertEquals(PAGE_SIZE, cards.size());
+        assertEquals(1, statistics.getPrepareStatementCount(), "tags and image ids are read with the cards");
+    }
+
+    @Test
+    void findAllByUserIdLoadsCardsWithArraysInOneStatement() {
+        Statistics statistics = statistics();
+
+        List<CardModel> cards = cardRepo.findAllByUserId(USER_ID);
+        cards.forEach(CardFetchPlanTest::touchCollections);
+
+        assertEquals(PAGE_SIZE, cards.size());
+        assertEquals(1, statistics.getPrepareStatementCount(), "tags and image ids are read with the cards");
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private static void touchCollections(CardModel card) {
+        assertEquals(2, card.getTags().size());
+        assertEquals(2, card.getImgIds().size());
+    }
+}
@@ -0,0 +1,115 @@
+package karm.van.service;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import karm.van.config.WebClientConfiguration;
+import karm.van.config.properties.AuthenticationMicroServiceProperties;
+import karm.van.config.properties.CommentMicroServiceProperties;
+import karm.van.config.properties.HttpClientProperties;
+import karm.van.config.properties.ImageMicroServiceProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Сравнение старого клиента (WebClient.create() + разбор адреса на каждый запрос) с настроенным из WebClientConfiguration.
+// По умолчанию не запускается, запуск: mvn -pl Ads_microservice test -Dgroups=benchmark -DexcludedGroups=none
+@Tag("benchmark")
+public class ApiServiceBenchmarkTest {
+    private static final int WARMUP = 500;
+    private static final int REQUESTS = 5000;
+    private static final int CONCURRENCY = 32;
+
+    private static DisposableServer server;
+    private static ConnectionProvider connectionProvider;
+    private static WebClient tunedClient;
+    private static ApiService apiService;
+
+    @BeforeAll
+    static void startServer() {
+        // Ответ по размеру похож на страницу карточек, чтобы сжатие имело значение
+        String body = "[" + "{\"id\":1,\"name\":\"image-name.png\",\"bucket\":\"images\"},".repeat(200) + "{}]";
+
+        server = HttpServer.create()
+                .port(0)
+                .compress(true)
+                .route(routes -> routes.get("/image/get/{id}", (request, response) ->
+                        response.header("Content-Type", "application/json").sendString(Mono.just(body))))
+                .bindNow();
+
+        AuthenticationMicroServiceProperties authenticationProperties = new AuthenticationMicroServiceProperties();
+        authenticationProperties.setHost("localhost");
+        authenticationProperties.setPort(String.valueOf(server.port()));
+        CommentMicroServiceProperties commentProperties = new CommentMicroServiceProperties();
+        commentProperties.setHost("localhost");
+        commentProperties.setPort(String.valueOf(server.port()));
+        ImageMicroServiceProperties imageProperties = new ImageMicroServiceProperties();
+        imageProperties.setHost("localhost");
+        imageProperties.setPort(String.valueOf(server.port()));
+
+        HttpClientProperties properties = new HttpClientProperties();
+        WebClientConfiguration configuration = new WebClientConfiguration();
+        connectionProvider = configuration.connectionProvider(properties, imageProperties, commentProperties, authenticationProperties);
+        tunedClient = configuration.webClient(connectionProvider, properties,
+                configuration.downstreamMetricsFilter(imageProperties, commentProperties, authenticationProperties, new SimpleMeterRegistry()),
+                configuration.downstreamResilienceFilter(
+                imageProperties, commentProperties, authenticationProperties,
+                CircuitBreakerRegistry.ofDefaults(), BulkheadRegistry.ofDefaults(), TimeLimiterRegistry.ofDefaults()));
+        apiService = new ApiService(tunedClient);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        connectionProvider.dispose();
+        server.disposeNow();
+    }
+
+    @Test
+    void compareClients() {
+        String port = String.valueOf(server.port());
+
+        WebClient defaultClient = WebClient.create();
+        Function<Long, String> defaultUrl = id -> UriComponentsBuilder
+                .fromHttpUrl("http://localhost:" + port + "/image/get")
+                .pathSegment(id.toString())
+                .toUriString();
+        Function<Long, String> tunedUrl = id -> apiService.buildUrl("http://", "localhost", port, "/image/get", id);
+
+        run("default", defaultClient, defaultUrl, WARMUP);
+        run("tuned", tunedClient, tunedUrl, WARMUP);
+
+        long defaultTime = run("default", defaultClient, defaultUrl, REQUESTS);
+        long tunedTime = run("tuned", tunedClient, tunedUrl, REQUESTS);
+
+        System.out.printf("default client: %d ms, tuned client: %d ms (%d requests, concurrency %d)%n",
+                defaultTime, tunedTime, REQUESTS, CONCURRENCY);
+    }
+
+    private long run(String name, WebClient client, Function<Long, String> url, int requests) {
+        long start = System.nanoTime();
+
+        Long received = Flux.range(0, requests)
+                .flatMap(i -> client.get()
+                        .uri(url.apply((long) i))
+                        .retrieve()
+                        .bodyToMono(String.class), CONCURRENCY)
+                .count()
+                .block();
+
+        assertEquals(requests, received, name + " client lost responses");
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,91 @@
+package karm.van.service;
+
+import karm.van.dto.user.UserDtoRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ApiServiceTest {
+    private static final String USER_URL = "http://auth/user/get";
+    private static final String USERS_URL = "http://auth/user/get-users";
+
+    // Просроченный токен получает 401, но только после release - к этому моменту второй вызов уже идет
+    private final CountDownLatch expiredRequested = new CountDownLatch(1);
+    private final Sinks.Empty<Void> release = Sinks.empty();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final ApiService apiService = new ApiService(WebClient.builder()
+            .exchangeFunction(this::exchange)
+            .build());
+
+    private Mono<ClientResponse> exchange(ClientRequest request) {
+        requests.incrementAndGet();
+        if ("Bearer expired".equals(request.headers().getFirst(HttpHeaders.AUTHORIZATION))) {
+            expiredRequested.countDown();
+            return release.asMono().then(Mono.just(ClientResponse.create(HttpStatus.UNAUTHORIZED).build()));
+        }
+        String body = request.url().getPath().endsWith("get-users")
+                ? "[{\"id\":15,\"name\":\"alice\"}]"
+                : "{\"id\":15,\"name\":\"alice\"}";
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build());
+    }
+
+    @Test
+    void concurrentCallersWithDifferentTokensDoNotShareFailure() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<UserDtoRequest> expired = executor.submit(() -> apiService.getUserById(USER_URL, "expired", 15L, "key"));
+            assertTrue(expiredRequested.await(5, TimeUnit.SECONDS));
+
+            // Тот же пользователь, но другой токен: свой запрос, а не ожидание чужого 401
+            UserDtoRequest user = executor.submit(() -> apiService.getUserById(USER_URL, "token", 15L, "key"))
+                    .get(5, TimeUnit.SECONDS);
+            release.tryEmitEmpty();
+
+            assertEquals("alice", user.name());
+            assertNull(expired.get(5, TimeUnit.SECONDS));
+            assertEquals(2, requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentAsyncCallersWithDifferentTokensDoNotShareFailure() {
+        Mono<Map<Long, UserDtoRequest>> expired = apiService.getUsersByIdsAsync(USERS_URL, "expired", List.of(15L), "key").cache();
+        expired.subscribe(users -> {}, error -> {});
+
+        Map<Long, UserDtoRequest> users = apiService.getUsersByIdsAsync(USERS_URL, "token", List.of(15L), "key")
+                .block(Duration.ofSeconds(5));
+        release.tryEmitEmpty();
+
+        assertEquals("alice", users.get(15L).name());
+        assertThrows(WebClientResponseException.Unauthorized.class, () -> expired.block(Duration.ofSeconds(5)));
+        assertEquals(2, requests.get());
+    }
+}
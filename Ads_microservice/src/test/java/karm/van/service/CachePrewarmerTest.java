@@ -0,0 +1,82 @@
+package karm.van.service;
+
+import karm.van.cache.HotKeyTracker;
+import karm.van.cache.NearCache;
+import karm.van.config.properties.CacheProperties;
+import karm.van.dto.card.CardListingKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachePrewarmerTest {
+    private static final int CONCURRENCY = 2;
+    private static final int LISTINGS = 5;
+
+    private CardService cardService;
+    private HotKeyTracker hotKeyTracker;
+    private CachePrewarmer cachePrewarmer;
+
+    @BeforeEach
+    void setUp() {
+        cardService = mock(CardService.class);
+        hotKeyTracker = mock(HotKeyTracker.class);
+
+        CacheProperties properties = new CacheProperties();
+        properties.getPrewarm().setDelayMs(0);
+        properties.getPrewarm().setConcurrency(CONCURRENCY);
+        properties.getPrewarm().setListings(LISTINGS);
+        cachePrewarmer = new CachePrewarmer(cardService, mock(ElasticService.class), hotKeyTracker,
+                mock(NearCache.class), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cachePrewarmer.shutdown();
+    }
+
+    @Test
+    void noMoreThanConcurrencyKeysAreRebuiltAtOnce() throws Exception {
+        when(hotKeyTracker.top(eq(CachePrewarmer.LISTINGS), anyInt(), eq(CardListingKey.class)))
+                .thenReturn(List.of(new CardListingKey(0, 10), new CardListingKey(1, 10), new CardListingKey(2, 10),
+                        new CardListingKey(3, 10), new CardListingKey(4, 10)));
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(CONCURRENCY);
+        CountDownLatch release = new CountDownLatch(1);
+        when(cardService.prewarmListing(anyInt(), anyInt())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return 10;
+        });
+
+        cachePrewarmer.onStartup();
+
+        assertTrue(started.await(5, TimeUnit.SECONDS), "workers did not start");
+        // Остальные ключи ждут в очереди, пока заняты оба потока
+        Thread.sleep(200);
+        assertEquals(CONCURRENCY, running.get());
+
+        release.countDown();
+        for (int page = 0; page < LISTINGS; page++) {
+            verify(cardService, timeout(5000)).prewarmListing(page, 10);
+        }
+        assertEquals(CONCURRENCY, maxRunning.get());
+    }
+}
@@ -0,0 +1,140 @@
+package karm.van.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import karm.van.dto.card.CardCursor;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.exception.card.InvalidCursorException;
+import karm.van.exception.other.TokenNotExistException;
+import karm.van.repo.jpaRepo.CardRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class CardExportServiceTest {
+    private static final String AUTHORIZATION = "Bearer token";
+
+    private CardRepo cardRepo;
+    private CardViewService cardViewService;
+    private JwtService jwtService;
+    private CardExportService cardExportService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        cardRepo = mock(CardRepo.class);
+        cardViewService = mock(CardViewService.class);
+        jwtService = mock(JwtService.class);
+        when(jwtService.validateAccessToken("token")).thenReturn(true);
+        // Витрина отдает все запрошенные карточки
+        when(cardViewService.getCards(anyCollection(), eq("token"))).thenAnswer(invocation -> new CardViewService.Cards(
+                invocation.<Collection<Long>>getArgument(0).stream().map(CardExportServiceTest::card).toList(), Set.of()));
+
+        cardExportService = new CardExportService(cardRepo, cardViewService, jwtService, new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(cardExportService, "batchSize", 2);
+    }
+
+    @Test
+    void cardsAreReadInBatchesUntilShortBatch() throws Exception {
+        when(cardRepo.findFeedStart(Limit.of(2))).thenReturn(cursors(5, 4));
+        when(cardRepo.findFeedAfter(date(), 4L, Limit.of(2))).thenReturn(cursors(3, 2));
+        when(cardRepo.findFeedAfter(date(), 2L, Limit.of(2))).thenReturn(cursors(1));
+
+        List<String> lines = export(null, CardExportService.Format.NDJSON).lines().toList();
+
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"id\":5,"), lines.get(0));
+        assertTrue(lines.get(4).startsWith("{\"id\":1,"), lines.get(4));
+        // Неполная пачка - последняя, лишнего запроса после нее нет
+        verify(cardRepo, never()).findFeedAfter(date(), 1L, Limit.of(2));
+    }
+
+    @Test
+    void exportStopsOnEmptyBatch() throws Exception {
+        when(cardRepo.findFeedStart(Limit.of(2))).thenReturn(cursors(2, 1));
+        when(cardRepo.findFeedAfter(date(), 1L, Limit.of(2))).thenReturn(List.of());
+
+        assertEquals(2, export(null, CardExportService.Format.NDJSON).lines().count());
+    }
+
+    @Test
+    void exportContinuesAfterCursor() throws Exception {
+        when(cardRepo.findFeedAfter(date(), 3L, Limit.of(2))).thenReturn(cursors(2));
+
+        export(cursor(3).encode(), CardExportService.Format.NDJSON);
+
+        verify(cardRepo, never()).findFeedStart(any());
+    }
+
+    @Test
+    void deletedCardsAreSkipped() throws Exception {
+        when(cardRepo.findFeedStart(Limit.of(2))).thenReturn(cursors(2));
+        // Карточку 2 удалили между чтением индекса и витрины
+        when(cardViewService.getCards(anyCollection(), eq("token"))).thenReturn(new CardViewService.Cards(List.of(), Set.of()));
+
+        assertEquals("", export(null, CardExportService.Format.NDJSON));
+    }
+
+    @Test
+    void sseEventIdIsTheCursorOfTheCard() throws Exception {
+        when(cardRepo.findFeedStart(Limit.of(2))).thenReturn(cursors(7));
+
+        String body = export(null, CardExportService.Format.SSE);
+
+        assertTrue(body.startsWith("id:" + cursor(7).encode() + "\ndata:{\"id\":7,"), body);
+        assertTrue(body.endsWith("}\n\n"), body);
+    }
+
+    @Test
+    void invalidTokenAndCursorFailBeforeStreaming() {
+        when(jwtService.validateAccessToken("expired")).thenReturn(false);
+
+        assertThrows(TokenNotExistException.class,
+                () -> cardExportService.export(null, CardExportService.Format.NDJSON, "Bearer expired"));
+        assertThrows(InvalidCursorException.class,
+                () -> cardExportService.export("bm90LWEtY3Vyc29y", CardExportService.Format.NDJSON, AUTHORIZATION));
+        verifyNoInteractions(cardRepo);
+    }
+
+    private String export(String cursor, CardExportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cardExportService.export(cursor, format, AUTHORIZATION).writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static List<CardCursor> cursors(long... ids) {
+        return LongStream.of(ids).mapToObj(CardExportServiceTest::cursor).toList();
+    }
+
+    private static CardCursor cursor(long id) {
+        return new CardCursor(date(), id);
+    }
+
+    private static LocalDate date() {
+        return LocalDate.of(2024, 10, 11);
+    }
+
+    private static FullCardDtoForOutput card(Long id) {
+        return new FullCardDtoForOutput(id, "title", "text", date(), List.of("java"), List.of(), "author");
+    }
+}
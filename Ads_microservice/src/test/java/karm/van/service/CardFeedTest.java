@@ -0,0 +1,124 @@
+package karm.van.service;
+
+import karm.van.cache.CacheLoader;
+import karm.van.cache.HotKeyTracker;
+import karm.van.cache.NearCache;
+import karm.van.dto.card.CardCursor;
+import karm.van.dto.card.CardFeedIds;
+import karm.van.dto.card.CardFeedResponseDto;
+import karm.van.exception.card.InvalidCursorException;
+import karm.van.repo.jpaRepo.CardRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CardFeedTest {
+    private static final String AUTHORIZATION = "Bearer token";
+
+    @Mock
+    private CardRepo cardRepo;
+    @Mock
+    private NearCache nearCache;
+    @Mock
+    private JwtService jwtService;
+    @Mock
+    private CardFragmentCache cardFragmentCache;
+    @Mock
+    private HotKeyTracker hotKeyTracker;
+    @InjectMocks
+    private CardService cardService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(cardService, "maxFeedLimit", 100);
+        when(jwtService.validateAccessToken("token")).thenReturn(true);
+        when(cardFragmentCache.getCards(anyList(), anyString())).thenReturn(List.of());
+        // Кеш всегда промахивается - страница собирается из БД
+        when(nearCache.getOrLoad(anyString(), eq(CardFeedIds.class), any())).thenAnswer(invocation ->
+                invocation.<CacheLoader<CardFeedIds, Exception>>getArgument(2).load());
+    }
+
+    @Test
+    void fullPageHasCursorOfItsLastCard() throws Exception {
+        when(cardRepo.findFeedStart(Limit.of(4))).thenReturn(cursors(10, 9, 8, 7));
+
+        CardFeedResponseDto page = cardService.getCardFeed(null, 3, false, AUTHORIZATION);
+
+        verify(cardFragmentCache).getCards(List.of(10L, 9L, 8L), "token");
+        assertEquals(cursor(8).encode(), page.nextCursor());
+        assertNull(page.totalElements());
+    }
+
+    @Test
+    void lastPageHasNoCursor() throws Exception {
+        CardCursor after = cursor(8);
+        when(cardRepo.findFeedAfter(after.createTime(), after.id(), Limit.of(4))).thenReturn(cursors(7, 6, 5));
+
+        CardFeedResponseDto page = cardService.getCardFeed(after.encode(), 3, false, AUTHORIZATION);
+
+        // Ровно limit карточек: лишней не нашлось, значит страница последняя
+        verify(cardFragmentCache).getCards(List.of(7L, 6L, 5L), "token");
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void limitIsClampedToMaxFeedLimit() throws Exception {
+        when(cardRepo.findFeedStart(Limit.of(101))).thenReturn(List.of());
+
+        cardService.getCardFeed(null, 1000, false, AUTHORIZATION);
+        cardService.getCardFeed(null, 0, false, AUTHORIZATION);
+
+        verify(cardRepo).findFeedStart(Limit.of(101));
+        verify(cardRepo).findFeedStart(Limit.of(2));
+    }
+
+    @Test
+    void onlyFeedStartIsRecordedForPrewarm() throws Exception {
+        when(cardRepo.findFeedAfter(any(), any(), any())).thenReturn(List.of());
+
+        cardService.getCardFeed(cursor(8).encode(), 20, false, AUTHORIZATION);
+
+        verify(hotKeyTracker, never()).record(anyString(), any());
+    }
+
+    @Test
+    void invalidCursorIsRejectedBeforeQuery() {
+        assertThrows(InvalidCursorException.class,
+                () -> cardService.getCardFeed("bm90LWEtY3Vyc29y", 20, false, AUTHORIZATION));
+        verifyNoInteractions(cardRepo);
+    }
+
+    private static List<CardCursor> cursors(long... ids) {
+        return LongStream.of(ids).mapToObj(CardFeedTest::cursor).toList();
+    }
+
+    // Все карточки созданы в один день - порядок задает id
+    private static CardCursor cursor(long id) {
+        return new CardCursor(LocalDate.of(2024, 10, 11), id);
+    }
+}
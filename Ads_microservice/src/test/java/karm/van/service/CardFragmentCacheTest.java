@@ -0,0 +1,66 @@
+package karm.van.service;
+
+import karm.van.cache.NearCache;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.dto.image.ImageDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CardFragmentCacheTest {
+    private NearCache nearCache;
+    private CardViewService cardViewService;
+    private CardFragmentCache cardFragmentCache;
+
+    @BeforeEach
+    void setUp() {
+        nearCache = mock(NearCache.class);
+        cardViewService = mock(CardViewService.class);
+        cardFragmentCache = new CardFragmentCache(nearCache, cardViewService);
+        when(nearCache.getAll(anyCollection(), eq(FullCardDtoForOutput.class))).thenReturn(Map.of());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void incompleteCardsAreReturnedButNotCached() {
+        FullCardDtoForOutput complete = card(1L, "author", List.of(new ImageDto(10L, "images", "a.png")));
+        FullCardDtoForOutput degraded = card(2L, null, List.of());
+        when(cardViewService.getCards(List.of(1L, 2L), "token"))
+                .thenReturn(new CardViewService.Cards(List.of(complete, degraded), Set.of(2L)));
+
+        List<FullCardDtoForOutput> cards = cardFragmentCache.getCards(List.of(1L, 2L), "token");
+
+        assertEquals(List.of(complete, degraded), cards);
+        ArgumentCaptor<Map<String, FullCardDtoForOutput>> cached = ArgumentCaptor.forClass(Map.class);
+        verify(nearCache).putAll(cached.capture(), eq(FullCardDtoForOutput.class), anyLong());
+        assertEquals(Map.of("card1", complete), cached.getValue());
+    }
+
+    @Test
+    void cardsKeepRequestedOrder() {
+        FullCardDtoForOutput first = card(1L, "author", List.of());
+        FullCardDtoForOutput second = card(2L, "author", List.of());
+        when(nearCache.getAll(anyCollection(), eq(FullCardDtoForOutput.class))).thenReturn(Map.of("card2", second));
+        when(cardViewService.getCards(List.of(1L), "token"))
+                .thenReturn(new CardViewService.Cards(List.of(first), Set.of()));
+
+        assertEquals(List.of(second, first), cardFragmentCache.getCards(List.of(2L, 1L), "token"));
+    }
+
+    private static FullCardDtoForOutput card(Long id, String author, List<ImageDto> images) {
+        return new FullCardDtoForOutput(id, "title", "text", LocalDate.of(2024, 10, 1), List.of("java"), images, author);
+    }
+}
@@ -0,0 +1,252 @@
+package karm.van.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import karm.van.cache.CacheLoader;
+import karm.van.cache.HotKeyTracker;
+import karm.van.cache.NearCache;
+import karm.van.cache.RedisCache;
+import karm.van.config.WebClientConfiguration;
+import karm.van.config.properties.AuthenticationMicroServiceProperties;
+import karm.van.config.properties.CommentMicroServiceProperties;
+import karm.van.config.properties.HttpClientProperties;
+import karm.van.config.properties.ImageMicroServiceProperties;
+import karm.van.dto.card.CardPageResponseDto;
+import karm.van.model.CardDocument;
+import karm.van.model.CardModel;
+import karm.van.repo.elasticRepo.ElasticRepo;
+import karm.van.repo.jpaRepo.CardRepo;
+import karm.van.repo.jpaRepo.CardViewRepo;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Листинг (/card/get) и поиск (/card/search) Ads на настоящих сервисах: CardService, ElasticService, CardFragmentCache,
+// CardViewService, CardHydrationService и ApiService с пулом соединений как в WebClientConfiguration.
+// Вместо хранилищ - заглушки с задержкой: Redis -DredisMs (1), Postgres -DdbMs (5), Elasticsearch -DelasticMs (20).
+// Кеши всегда промахиваются, витрины карточек нет: каждый запрос читает страницу id, карточки и собирает их через
+// сервисы картинок и аутентификации (локальный сервер, ответ через -DlatencyMs). Это самый дорогой путь чтения
+class CardReadStack implements AutoCloseable {
+    static final String AUTHORIZATION = "Bearer token";
+    static final int PAGE_SIZE = 20;
+    private static final int PAGES = 50;
+    private static final int AUTHORS = 5;
+
+    private static final Duration REDIS_LATENCY = Duration.ofMillis(Long.getLong("redisMs", 1));
+    private static final Duration DB_LATENCY = Duration.ofMillis(Long.getLong("dbMs", 5));
+    private static final Duration ELASTIC_LATENCY = Duration.ofMillis(Long.getLong("elasticMs", 20));
+
+    private final DisposableServer downstream;
+    private final ConnectionProvider connectionProvider;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final CardService cardService;
+    private final ElasticService elasticService;
+
+    CardReadStack(Duration downstreamLatency) {
+        String users = LongStream.rangeClosed(1, AUTHORS)
+                .mapToObj(id -> "{\"id\":%d,\"name\":\"author%d\"}".formatted(id, id))
+                .collect(Collectors.joining(",", "[", "]"));
+        // У карточек нет картинок, поэтому сервису картинок достаточно пустого ответа
+        downstream = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .post("/image/get/batch", (request, response) -> request.receive().then(response
+                                .header("Content-Type", "application/json")
+                                .sendString(Mono.delay(downstreamLatency).thenReturn("{}")).then()))
+                        .get("/user/get/batch", (request, response) -> response
+                                .header("Content-Type", "application/json")
+                                .sendString(Mono.delay(downstreamLatency).thenReturn(users))))
+                .bindNow();
+
+        ImageMicroServiceProperties imageProperties = imageProperties(downstream.port());
+        AuthenticationMicroServiceProperties authenticationProperties = authenticationProperties(downstream.port());
+        CommentMicroServiceProperties commentProperties = new CommentMicroServiceProperties();
+        commentProperties.setHost("localhost");
+        commentProperties.setPort("0");
+
+        // Пул соединений с лимитами по умолчанию (-DmaxConnections, 50). Фильтры устойчивости и метрик не включены
+        HttpClientProperties httpClientProperties = new HttpClientProperties();
+        httpClientProperties.getPool().setMaxConnections(Integer.getInteger("maxConnections", 50));
+        connectionProvider = new WebClientConfiguration()
+                .connectionProvider(httpClientProperties, imageProperties, commentProperties, authenticationProperties);
+        ApiService apiService = new ApiService(WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(reactor.netty.http.client.HttpClient.create(connectionProvider)
+                        .responseTimeout(Duration.ofMillis(httpClientProperties.getResponseTimeoutMs()))))
+                .build());
+
+        CardHydrationService cardHydrationService = new CardHydrationService(apiService, imageProperties, authenticationProperties);
+        ReflectionTestUtils.setField(cardHydrationService, "apiKey", "key");
+        ReflectionTestUtils.setField(cardHydrationService, "batchSize", 25);
+        ReflectionTestUtils.setField(cardHydrationService, "concurrency", 4);
+        ReflectionTestUtils.setField(cardHydrationService, "timeoutMs", 3000L);
+
+        NearCache nearCache = stub(NearCache.class);
+        when(nearCache.generation(anyString())).thenReturn(1L);
+        when(nearCache.getOrLoad(anyString(), any(), any())).thenAnswer(CardReadStack::missRedis);
+        when(nearCache.getAll(anyCollection(), any())).thenAnswer(invocation -> {
+            pause(REDIS_LATENCY);
+            return Map.of();
+        });
+        RedisCache redisCache = stub(RedisCache.class);
+        when(redisCache.getOrLoad(anyString(), any(Class.class), any())).thenAnswer(CardReadStack::missRedis);
+
+        CardRepo cardRepo = stub(CardRepo.class);
+        when(cardRepo.findSliceIds(any())).thenAnswer(invocation -> {
+            pause(DB_LATENCY);
+            Pageable pageable = invocation.getArgument(0);
+            return new SliceImpl<>(ids(pageable), pageable, true);
+        });
+        when(cardRepo.findAllById(any())).thenAnswer(invocation -> {
+            pause(DB_LATENCY);
+            return invocation.<Iterable<Long>>getArgument(0) instanceof Collection<Long> ids
+                    ? ids.stream().map(CardReadStack::card).toList()
+                    : List.of();
+        });
+        when(cardRepo.lockUnchanged(any(), any())).thenAnswer(invocation -> {
+            pause(DB_LATENCY);
+            return List.of(invocation.<Long[]>getArgument(0));
+        });
+        CardViewRepo cardViewRepo = stub(CardViewRepo.class);
+        when(cardViewRepo.findAllById(any())).thenAnswer(invocation -> {
+            pause(DB_LATENCY);
+            return List.of();
+        });
+        when(cardViewRepo.saveAll(any())).thenAnswer(invocation -> {
+            pause(DB_LATENCY);
+            return List.of();
+        });
+        ElasticRepo elasticRepo = stub(ElasticRepo.class);
+        when(elasticRepo.findByQueryOnly(anyString(), any())).thenAnswer(invocation -> {
+            pause(ELASTIC_LATENCY);
+            Pageable pageable = invocation.getArgument(1);
+            return new PageImpl<>(ids(pageable).stream().map(CardReadStack::document).toList(), pageable, PAGES * PAGE_SIZE);
+        });
+
+        PlatformTransactionManager transactionManager = stub(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        JwtService jwtService = stub(JwtService.class);
+        when(jwtService.validateAccessToken("token")).thenReturn(true);
+        HotKeyTracker hotKeyTracker = stub(HotKeyTracker.class);
+
+        CardViewService cardViewService = new CardViewService(cardViewRepo, cardRepo, cardHydrationService, nearCache, transactionManager);
+        CardFragmentCache cardFragmentCache = new CardFragmentCache(nearCache, cardViewService);
+        cardService = new CardService(cardRepo, redisCache, nearCache, objectMapper, commentProperties, imageProperties,
+                authenticationProperties, apiService, jwtService, null, null, cardFragmentCache, cardViewService, hotKeyTracker);
+        elasticService = new ElasticService(redisCache, nearCache, elasticRepo, cardRepo, jwtService, cardFragmentCache, hotKeyTracker);
+    }
+
+    // Случайная страница, чтобы одновременные запросы не склеивались в один (SingleFlight)
+    Void listing() throws Exception {
+        return respond(cardService.getAllCards(randomPage(), PAGE_SIZE, false, AUTHORIZATION));
+    }
+
+    Void search() throws Exception {
+        return respond(elasticService.search("java", randomPage(), PAGE_SIZE, AUTHORIZATION,
+                Optional.empty(), Optional.empty()));
+    }
+
+    // Страница без имен авторов - сервис аутентификации не ответил вовремя (пул, дедлайн сборки). Пользователь
+    // получит ответ 200, но для замера это ошибка
+    private Void respond(CardPageResponseDto page) throws Exception {
+        if (page.cards().size() != PAGE_SIZE || page.cards().stream().anyMatch(card -> card.authorName() == null)) {
+            throw new IllegalStateException("incomplete page");
+        }
+        objectMapper.writeValueAsBytes(page);
+        return null;
+    }
+
+    @Override
+    public void close() {
+        connectionProvider.dispose();
+        downstream.disposeNow();
+    }
+
+    private static Object missRedis(InvocationOnMock invocation) throws Throwable {
+        pause(REDIS_LATENCY);
+        return invocation.<CacheLoader<?, ?>>getArgument(2).load();
+    }
+
+    // Mockito по умолчанию запоминает каждый вызов, за прогон это миллионы объектов
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    private static void pause(Duration latency) throws InterruptedException {
+        if (!latency.isZero()) {
+            Thread.sleep(latency.toMillis());
+        }
+    }
+
+    private static int randomPage() {
+        return ThreadLocalRandom.current().nextInt(PAGES);
+    }
+
+    private static List<Long> ids(Pageable pageable) {
+        long first = pageable.getOffset() + 1;
+        return LongStream.range(first, first + pageable.getPageSize()).boxed().toList();
+    }
+
+    private static CardModel card(Long id) {
+        return CardModel.builder()
+                .id(id)
+                .title("title " + id)
+                .text("text of card " + id)
+                .createTime(LocalDate.of(2024, 10, 11))
+                .userId(id % AUTHORS + 1)
+                .version(0L)
+                .tags(List.of("java"))
+                .build();
+    }
+
+    private static CardDocument document(Long id) {
+        return CardDocument.builder().id(id).title("title " + id).text("text of card " + id).build();
+    }
+
+    private static ImageMicroServiceProperties imageProperties(int port) {
+        ImageMicroServiceProperties.Endpoints endpoints = new ImageMicroServiceProperties.Endpoints();
+        endpoints.setGetImagesBatch("/image/get/batch");
+        ImageMicroServiceProperties properties = new ImageMicroServiceProperties();
+        properties.setPrefix("http://");
+        properties.setHost("localhost");
+        properties.setPort(String.valueOf(port));
+        properties.setEndpoints(endpoints);
+        return properties;
+    }
+
+    private static AuthenticationMicroServiceProperties authenticationProperties(int port) {
+        AuthenticationMicroServiceProperties.Endpoints endpoints = new AuthenticationMicroServiceProperties.Endpoints();
+        endpoints.setUsersBatch("/user/get/batch");
+        AuthenticationMicroServiceProperties properties = new AuthenticationMicroServiceProperties();
+        properties.setPrefix("http://");
+        properties.setHost("localhost");
+        properties.setPort(String.valueOf(port));
+        properties.setEndpoints(endpoints);
+        return properties;
+    }
+}
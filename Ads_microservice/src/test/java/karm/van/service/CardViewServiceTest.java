@@ -0,0 +1,155 @@
+package karm.van.service;
+
+import karm.van.cache.NearCache;
+import karm.van.dto.card.FullCardDtoForOutput;
+import karm.van.dto.image.ImageDto;
+import karm.van.model.CardModel;
+import karm.van.model.CardView;
+import karm.van.repo.jpaRepo.CardRepo;
+import karm.van.repo.jpaRepo.CardViewRepo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CardViewServiceTest {
+    private CardViewRepo cardViewRepo;
+    private CardRepo cardRepo;
+    private CardHydrationService cardHydrationService;
+    private NearCache nearCache;
+    private CardViewService cardViewService;
+
+    @BeforeEach
+    void setUp() {
+        cardViewRepo = mock(CardViewRepo.class);
+        cardRepo = mock(CardRepo.class);
+        cardHydrationService = mock(CardHydrationService.class);
+        nearCache = mock(NearCache.class);
+        cardViewService = new CardViewService(cardViewRepo, cardRepo, cardHydrationService, nearCache,
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    void cardIsCompleteWithAuthorAndAllImages() {
+        CardModel card = card(1L, 7L, List.of(10L));
+
+        assertTrue(CardViewService.isComplete(card, dto(1L, "author", List.of(image(10L)))));
+        assertFalse(CardViewService.isComplete(card, dto(1L, null, List.of(image(10L)))));
+        assertFalse(CardViewService.isComplete(card, dto(1L, "author", List.of())));
+        // У карточки без автора имени и не ждем
+        assertTrue(CardViewService.isComplete(card(1L, null, List.of()), dto(1L, null, List.of())));
+    }
+
+    @Test
+    void cardWithoutImageArrayIsCompleteWithoutImages() {
+        // Строка, которую еще не прошла CardArrayColumnsMigration
+        CardModel card = card(1L, 7L, List.of());
+        card.setImgIds(null);
+
+        assertTrue(CardViewService.isComplete(card, dto(1L, "author", List.of())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onlyCompleteCardsAreSavedToView() {
+        CardModel complete = card(1L, 7L, List.of(10L));
+        CardModel degraded = card(2L, 7L, List.of(11L));
+        when(cardRepo.findAllById(List.of(1L, 2L))).thenReturn(List.of(complete, degraded));
+        when(cardHydrationService.toFullCardsDto(List.of(complete, degraded), "token")).thenReturn(List.of(
+                dto(1L, "author", List.of(image(10L))),
+                // Сервис картинок не ответил
+                dto(2L, "author", List.of())));
+        when(cardRepo.lockUnchanged(any(), any())).thenReturn(List.of(1L));
+
+        CardViewService.Cards cards = cardViewService.getCards(List.of(1L, 2L), "token");
+
+        assertEquals(2, cards.cards().size());
+        assertEquals(Set.of(2L), cards.incomplete());
+        ArgumentCaptor<List<CardView>> saved = ArgumentCaptor.forClass(List.class);
+        verify(cardViewRepo).saveAll(saved.capture());
+        assertEquals(List.of(1L), saved.getValue().stream().map(CardView::getId).toList());
+        assertEquals(3L, saved.getValue().get(0).getCardVersion());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void viewBuiltFromChangedCardIsNotSaved() {
+        CardModel card = card(1L, 7L, List.of());
+        when(cardRepo.findAllById(List.of(1L))).thenReturn(List.of(card));
+        when(cardHydrationService.toFullCardsDto(List.of(card), "token")).thenReturn(List.of(dto(1L, "author", List.of())));
+        // Пока шли запросы к картинкам и авторам, карточку изменили - версия в БД уже не 3
+        when(cardRepo.lockUnchanged(any(), any())).thenReturn(List.of());
+
+        CardViewService.Cards cards = cardViewService.getCards(List.of(1L), "token");
+
+        assertEquals(1, cards.cards().size());
+        ArgumentCaptor<List<CardView>> saved = ArgumentCaptor.forClass(List.class);
+        verify(cardViewRepo).saveAll(saved.capture());
+        assertTrue(saved.getValue().isEmpty());
+    }
+
+    @Test
+    void newerViewIsNotOverwritten() {
+        CardView view = CardView.builder().id(1L).title("new").cardVersion(5L).build();
+        when(cardViewRepo.findById(1L)).thenReturn(Optional.of(view));
+        CardModel outdated = card(1L, 7L, List.of());
+        outdated.setTitle("old");
+
+        cardViewService.updateText(outdated);
+
+        assertEquals("new", view.getTitle());
+    }
+
+    @Test
+    void renamedAuthorCardsAreEvictedAfterCommit() {
+        when(cardViewRepo.findIdsByUserId(7L)).thenReturn(List.of(1L, 2L));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cardViewService.renameAuthor(7L, "new name");
+            verify(nearCache, never()).evict(any(String[].class));
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(nearCache).evict("card1", "card2");
+    }
+
+    private static CardModel card(Long id, Long userId, List<Long> imgIds) {
+        return CardModel.builder()
+                .id(id)
+                .title("title")
+                .text("text")
+                .createTime(LocalDate.of(2024, 10, 1))
+                .userId(userId)
+                .version(3L)
+                .imgIds(new ArrayList<>(imgIds))
+                .build();
+    }
+
+    private static FullCardDtoForOutput dto(Long id, String author, List<ImageDto> images) {
+        return new FullCardDtoForOutput(id, "title", "text", LocalDate.of(2024, 10, 1), List.of(), images, author);
+    }
+
+    private static ImageDto image(Long id) {
+        return new ImageDto(id, "images", id + ".png");
+    }
+}
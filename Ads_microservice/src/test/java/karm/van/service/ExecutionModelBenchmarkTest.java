@@ -0,0 +1,207 @@
+package karm.van.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Модели исполнения запроса Ads. Обычные потоки - пул как у Tomcat по умолчанию (200), виртуальные - поток на запрос.
+// Нагрузка замкнутая: -Dusers клиентов (400) шлют запросы друг за другом. Запросы:
+// - proxy: два последовательных блокирующих похода в другой сервис по -DlatencyMs (100), без кода Ads;
+// - listing и search: листинг и поиск карточек на настоящих сервисах Ads, хранилища - заглушки (CardReadStack).
+// Полный прогон со всем стеком - load-test/run.sh.
+// Виртуальные потоки есть только на Java 21, на 17 их прогон пропускается.
+// По умолчанию не запускается, запуск: mvn -pl Ads_microservice test -Dgroups=benchmark -DexcludedGroups=none -Dtest=ExecutionModelBenchmarkTest
+@Tag("benchmark")
+public class ExecutionModelBenchmarkTest {
+    private static final int PLATFORM_THREADS = 200;
+    private static final int USERS = Integer.getInteger("users", 400);
+    // Сколько запросов одновременно обрабатывают виртуальные потоки, 0 - без ограничения (как Tomcat с ними)
+    private static final int VIRTUAL_LIMIT = Integer.getInteger("virtualLimit", 0);
+    private static final int DOWNSTREAM_CALLS = 2;
+    private static final Duration DOWNSTREAM_LATENCY = Duration.ofMillis(Long.getLong("latencyMs", 100));
+    private static final Duration WARMUP = Duration.ofSeconds(10);
+    private static final Duration DURATION = Duration.ofSeconds(20);
+
+    private static DisposableServer server;
+    private static HttpClient client;
+    private static URI downstream;
+    private static CardReadStack cardReadStack;
+
+    @BeforeAll
+    static void startServer() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.get("/downstream", (request, response) -> response
+                        .header("Content-Type", "application/json")
+                        .sendString(Mono.delay(DOWNSTREAM_LATENCY).thenReturn("{\"id\":1,\"name\":\"author\"}"))))
+                .bindNow();
+        downstream = URI.create("http://localhost:" + server.port() + "/downstream");
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        cardReadStack = new CardReadStack(DOWNSTREAM_LATENCY);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        cardReadStack.close();
+        server.disposeNow();
+    }
+
+    @Test
+    void platformProxy() throws InterruptedException {
+        report("platform", "proxy", platformExecutor(), this::handleRequest);
+    }
+
+    @Test
+    void virtualProxy() throws Exception {
+        report(virtualMode(), "proxy", virtualExecutor(), limitVirtual(this::handleRequest));
+    }
+
+    @Test
+    void platformListing() throws InterruptedException {
+        report("platform", "listing", platformExecutor(), cardReadStack::listing);
+    }
+
+    @Test
+    void virtualListing() throws Exception {
+        report(virtualMode(), "listing", virtualExecutor(), limitVirtual(cardReadStack::listing));
+    }
+
+    @Test
+    void platformSearch() throws InterruptedException {
+        report("platform", "search", platformExecutor(), cardReadStack::search);
+    }
+
+    @Test
+    void virtualSearch() throws Exception {
+        report(virtualMode(), "search", virtualExecutor(), limitVirtual(cardReadStack::search));
+    }
+
+    private static ExecutorService platformExecutor() {
+        return Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    private static ExecutorService virtualExecutor() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads need Java 21");
+        // Сборка тестов идет под 17, поэтому фабрика берется через reflection
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+
+    private static String virtualMode() {
+        return VIRTUAL_LIMIT > 0 ? "virtual/" + VIRTUAL_LIMIT : "virtual";
+    }
+
+    // Лишние запросы ждут своей очереди до начала обработки, как в очереди пула обычных потоков
+    private static Callable<Void> limitVirtual(Callable<Void> handler) {
+        if (VIRTUAL_LIMIT <= 0) {
+            return handler;
+        }
+        Semaphore permits = new Semaphore(VIRTUAL_LIMIT, true);
+        return () -> {
+            permits.acquire();
+            try {
+                return handler.call();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    private void report(String mode, String request, ExecutorService executor, Callable<Void> handler) throws InterruptedException {
+        try {
+            run(executor, handler, WARMUP);
+            Result result = run(executor, handler, DURATION);
+            System.out.printf("%-11s %-7s java %d: %.0f rps, p50 %.1f ms, p99 %.1f ms, errors %d (%d users, %d requests)%n",
+                    mode, request, Runtime.version().feature(), result.throughput(), result.percentile(50),
+                    result.percentile(99), result.errors(), USERS, result.latenciesNanos().length);
+            assertEquals(0, result.errors(), mode + " requests failed");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Каждый клиент ждет ответа на свой запрос и сразу шлет следующий. Задержка считается от отправки
+    // в executor, то есть вместе с ожиданием свободного потока
+    private Result run(ExecutorService executor, Callable<Void> handler, Duration duration) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong errors = new AtomicLong();
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+        CountDownLatch finished = new CountDownLatch(USERS);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < USERS; i++) {
+            Thread user = new Thread(() -> {
+                List<Long> own = new ArrayList<>();
+                try {
+                    while (running.get()) {
+                        long sent = System.nanoTime();
+                        try {
+                            executor.submit(handler).get();
+                            own.add(System.nanoTime() - sent);
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    latencies.add(own.stream().mapToLong(Long::longValue).toArray());
+                    finished.countDown();
+                }
+            });
+            user.setDaemon(true);
+            user.start();
+        }
+
+        Thread.sleep(duration.toMillis());
+        running.set(false);
+        finished.await(30, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(all, all.length / seconds, errors.get());
+    }
+
+    private Void handleRequest() throws Exception {
+        for (int i = 0; i < DOWNSTREAM_CALLS; i++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(downstream).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("downstream answered " + response.statusCode());
+            }
+        }
+        return null;
+    }
+
+    private record Result(long[] latenciesNanos, double throughput, long errors) {
+        double percentile(int p) {
+            if (latenciesNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p / 100.0 * latenciesNanos.length) - 1;
+            return latenciesNanos[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
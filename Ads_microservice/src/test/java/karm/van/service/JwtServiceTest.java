@@ -0,0 +1,178 @@
+package karm.van.service;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.config.properties.AuthenticationMicroServiceProperties;
+import karm.van.config.properties.JwtProperties;
+import karm.van.dto.user.UserDtoRequest;
+import karm.van.dto.user.UserPrincipal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JwtServiceTest {
+    private static final String SECRET = secret("current-key-of-the-auth-service!");
+    private static final String ROTATED_SECRET = secret("key-that-ads-does-not-know-yet!!");
+
+    private RedisCommands<String, String> redisCommands;
+    private ApiService apiService;
+    private JwtProperties jwtProperties;
+    private JwtService jwtService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisCommands = mock(RedisCommands.class);
+        apiService = mock(ApiService.class);
+        when(apiService.buildUrl(any(), any(), any(), any())).thenReturn("http://auth/validate");
+
+        jwtProperties = new JwtProperties();
+        jwtProperties.setKeys(Map.of("k1", SECRET));
+        AuthenticationMicroServiceProperties authentication = new AuthenticationMicroServiceProperties();
+        authentication.setEndpoints(new AuthenticationMicroServiceProperties.Endpoints());
+
+        jwtService = new JwtService(jwtProperties, redisCommands, apiService, authentication);
+        ReflectionTestUtils.setField(jwtService, "apiKey", "api-key");
+    }
+
+    @Test
+    void validAccessTokenIsCheckedWithoutAuthService() {
+        assertTrue(jwtService.validateAccessToken(token("k1", SECRET, accessClaims())));
+        verify(apiService, never()).validateToken(anyString(), anyString());
+    }
+
+    @Test
+    void refreshAndDisabledTokensAreRejected() {
+        Map<String, Object> refresh = accessClaims();
+        refresh.put("token_type", "refresh");
+        Map<String, Object> disabled = accessClaims();
+        disabled.put("enabled", false);
+
+        assertFalse(jwtService.validateAccessToken(token("k1", SECRET, refresh)));
+        assertFalse(jwtService.validateAccessToken(token("k1", SECRET, disabled)));
+    }
+
+    @Test
+    void forgedAndExpiredTokensAreRejected() {
+        String forged = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, "k1")
+                .setClaims(accessClaims())
+                .setSubject("alice")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(SignatureAlgorithm.HS256, ROTATED_SECRET)
+                .compact();
+        String expired = Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, "k1")
+                .setClaims(accessClaims())
+                .setSubject("alice")
+                .setExpiration(new Date(System.currentTimeMillis() - 60_000))
+                .signWith(SignatureAlgorithm.HS256, SECRET)
+                .compact();
+
+        assertFalse(jwtService.validateAccessToken(forged));
+        assertFalse(jwtService.validateAccessToken(expired));
+        verify(apiService, never()).validateToken(anyString(), anyString());
+    }
+
+    @Test
+    void tokenSignedWithUnknownKeyIsCheckedByAuthService() {
+        String token = token("k2", ROTATED_SECRET, accessClaims());
+        when(apiService.validateToken(eq(token), anyString())).thenReturn(true);
+
+        assertTrue(jwtService.validateAccessToken(token));
+        verify(apiService).validateToken(eq(token), anyString());
+    }
+
+    @Test
+    void revokedTokenIsCheckedByAuthService() {
+        String token = token("k1", SECRET, accessClaims());
+        // Токены пользователя отозваны после выдачи этого
+        when(redisCommands.get("revoked-tokens:alice")).thenReturn(String.valueOf(System.currentTimeMillis() + 1000));
+        when(apiService.validateToken(eq(token), anyString())).thenReturn(false);
+
+        assertFalse(jwtService.validateAccessToken(token));
+        verify(apiService).validateToken(eq(token), anyString());
+    }
+
+    @Test
+    void tokenIssuedAfterRevocationIsCheckedLocally() {
+        when(redisCommands.get("revoked-tokens:alice")).thenReturn(String.valueOf(System.currentTimeMillis() - 60_000));
+
+        assertTrue(jwtService.validateAccessToken(token("k1", SECRET, accessClaims())));
+        verify(apiService, never()).validateToken(anyString(), anyString());
+    }
+
+    @Test
+    void principalIsReadFromClaims() throws Exception {
+        UserPrincipal principal = jwtService.getPrincipal(token("k1", SECRET, accessClaims()));
+
+        assertEquals(new UserPrincipal(15L, "alice", List.of("ROLE_USER"), true), principal);
+        verify(apiService, never()).getUserByToken(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void principalOfOldTokenIsRequestedFromAuthService() throws Exception {
+        // Токен выдан до того, как в него стали класть id и роли
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("token_type", "access");
+        String token = token("k1", SECRET, claims);
+        when(apiService.getUserByToken(anyString(), eq(token), eq("api-key"))).thenReturn(
+                new UserDtoRequest(15L, "alice", null, List.of("ROLE_ADMIN"), null, null, null, null, null, null));
+
+        assertEquals(new UserPrincipal(15L, "alice", List.of("ROLE_ADMIN"), true), jwtService.getPrincipal(token));
+    }
+
+    @Test
+    void everyTokenIsCheckedByAuthServiceWithoutLocalValidation() {
+        jwtProperties.setLocalValidation(false);
+        String token = token("k1", SECRET, accessClaims());
+        when(apiService.validateToken(eq(token), anyString())).thenReturn(true);
+
+        assertTrue(jwtService.validateAccessToken(token));
+        verify(apiService).validateToken(eq(token), anyString());
+    }
+
+    private static Map<String, Object> accessClaims() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("token_type", "access");
+        claims.put("user_id", 15L);
+        claims.put("roles", List.of("ROLE_USER"));
+        claims.put("enabled", true);
+        return claims;
+    }
+
+    private static String token(String keyId, String secret, Map<String, Object> claims) {
+        return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, keyId)
+                .setClaims(claims)
+                .setSubject("alice")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(SignatureAlgorithm.HS256, secret)
+                .compact();
+    }
+
+    private static String secret(String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,138 @@
+package karm.van.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @Test
+    void concurrentCallsWithSameKeyShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            Future<String> first = executor.submit(() -> singleFlight.execute("user:15", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return "alice";
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            List<Future<String>> others = IntStream.range(1, CALLERS)
+                    .mapToObj(i -> executor.submit(() -> singleFlight.execute("user:15", () -> {
+                        loads.incrementAndGet();
+                        return "other";
+                    })))
+                    .toList();
+            // Остальные вызовы успевают встать в ожидание общей загрузки
+            Thread.sleep(200);
+            release.countDown();
+
+            assertEquals("alice", first.get(5, TimeUnit.SECONDS));
+            for (Future<String> other : others) {
+                assertEquals("alice", other.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void waitingCallerGetsTheSameCheckedException() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> singleFlight.execute("user:15", () -> {
+                loading.countDown();
+                release.await();
+                throw new IOException("auth is down");
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> singleFlight.<String, IOException>execute("user:15", () -> "other"));
+            Thread.sleep(200);
+            release.countDown();
+
+            Exception firstError = assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+            Exception secondError = assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, firstError.getCause());
+            assertInstanceOf(IOException.class, secondError.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void keyIsReleasedAfterLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.execute("user:15", loads::incrementAndGet);
+        singleFlight.execute("user:15", loads::incrementAndGet);
+
+        // Это не кеш: следующий вызов после завершения загружает заново
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void differentKeysAreLoadedSeparately() throws Exception {
+        assertEquals("a", singleFlight.execute("a", () -> "a"));
+        assertEquals("b", singleFlight.execute("b", () -> "b"));
+    }
+
+    @Test
+    void asyncCallsWithSameKeyShareOneSubscription() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Sinks.One<String> response = Sinks.one();
+        Mono<String> request = Mono.defer(() -> {
+            subscriptions.incrementAndGet();
+            return response.asMono();
+        });
+
+        Mono<String> first = singleFlight.executeAsync("images:1,2", () -> request).cache();
+        Mono<String> second = singleFlight.executeAsync("images:1,2", () -> request).cache();
+        first.subscribe();
+        second.subscribe();
+        response.tryEmitValue("images");
+
+        assertEquals("images", first.block(Duration.ofSeconds(5)));
+        assertEquals("images", second.block(Duration.ofSeconds(5)));
+        assertEquals(1, subscriptions.get());
+    }
+
+    @Test
+    void cancelledWaiterDoesNotCancelSharedLoad() {
+        Sinks.One<String> response = Sinks.one();
+
+        Mono<String> owner = singleFlight.executeAsync("images:1", response::asMono).cache();
+        owner.subscribe();
+        singleFlight.executeAsync("images:1", response::asMono).subscribe().dispose();
+        response.tryEmitValue("images");
+
+        assertEquals("images", owner.block(Duration.ofSeconds(5)));
+    }
+}
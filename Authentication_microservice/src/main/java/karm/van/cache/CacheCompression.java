@@ -0,0 +1,64 @@
+package karm.van.cache;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.nio.ByteBuffer;
+
+// Первый байт значения говорит, сжато ли оно: RAW - дальше данные как есть,
+// LZ4 - дальше исходная длина (4 байта) и блок LZ4
+public class CacheCompression {
+    private static final byte RAW = 0;
+    private static final byte LZ4 = 1;
+
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+
+    private final boolean enabled;
+    private final int thresholdBytes;
+    private final LZ4Compressor compressor = FACTORY.fastCompressor();
+    private final LZ4FastDecompressor decompressor = FACTORY.fastDecompressor();
+
+    public CacheCompression(boolean enabled, int thresholdBytes) {
+        this.enabled = enabled;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    public byte[] wrap(byte[] data) {
+        if (enabled && data.length >= thresholdBytes) {
+            byte[] compressed = new byte[5 + compressor.maxCompressedLength(data.length)];
+            int length = compressor.compress(data, 0, data.length, compressed, 5);
+            // Несжимаемые данные храним как есть
+            if (length + 5 < data.length) {
+                ByteBuffer.wrap(compressed, 0, 5).put(LZ4).putInt(data.length);
+                byte[] result = new byte[length + 5];
+                System.arraycopy(compressed, 0, result, 0, result.length);
+                return result;
+            }
+        }
+
+        byte[] result = new byte[data.length + 1];
+        result[0] = RAW;
+        System.arraycopy(data, 0, result, 1, data.length);
+        return result;
+    }
+
+    public byte[] unwrap(byte[] value) {
+        if (value.length == 0) {
+            throw new IllegalArgumentException("Empty cache value");
+        }
+
+        return switch (value[0]) {
+            case RAW -> {
+                byte[] data = new byte[value.length - 1];
+                System.arraycopy(value, 1, data, 0, data.length);
+                yield data;
+            }
+            case LZ4 -> {
+                int originalLength = ByteBuffer.wrap(value, 1, 4).getInt();
+                yield decompressor.decompress(value, 5, originalLength);
+            }
+            default -> throw new IllegalArgumentException("Unknown cache value header " + value[0]);
+        };
+    }
+}
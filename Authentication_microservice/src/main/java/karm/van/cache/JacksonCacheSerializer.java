@@ -0,0 +1,39 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import karm.van.exception.SerializationException;
+
+import java.io.IOException;
+
+public class JacksonCacheSerializer<T> implements CacheSerializer<T> {
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final CacheCompression compression;
+
+    public JacksonCacheSerializer(ObjectMapper mapper, JavaType type, CacheCompression compression) {
+        this.reader = mapper.readerFor(type);
+        this.writer = mapper.writerFor(type);
+        this.compression = compression;
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        try {
+            return compression.wrap(writer.writeValueAsBytes(value));
+        } catch (IOException e) {
+            throw new SerializationException("an error occurred during serialization");
+        }
+    }
+
+    @Override
+    public T deserialize(byte[] value) throws SerializationException {
+        try {
+            return reader.readValue(compression.unwrap(value));
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("an error occurred during deserialization");
+        }
+    }
+}
@@ -0,0 +1,588 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import karm.van.config.properties.CacheProperties;
+import karm.van.exception.SerializationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Копии этого пакета (karm.van.cache) лежат в Ads, Comment и Authentication намеренно: общего модуля у сервисов нет,
+// каждый собирается и выкатывается сам. Правка кеша делается во всех копиях. В этой копии нет счетчиков
+// пагинации (count/adjustCount) - сервису аутентификации они не нужны.
+//
+// Типизированный доступ к кешу: чтение одним GET, запись одним SET EX (без окна между set и expire),
+// пакетное чтение одним MGET и пакетная запись одним вызовом скрипта.
+// Значения хранятся в формате redis.cache.format (по умолчанию Smile) и сжимаются LZ4 выше порога,
+// ключи - с префиксом версии redis.cache.key-version, снаружи с ним работать не нужно.
+// Битая запись считается промахом и удаляется, ответ в таком случае собирается заново.
+//
+// Перед значением лежит заголовок: когда запись устаревает и сколько мс ее собирали. В Redis она живет
+// еще redis.cache.refresh.stale-seconds после устаревания - getOrLoad в это время отдает старое значение
+// и пересобирает его в фоне, а до устаревания начинает пересборку досрочно со случайной вероятностью (XFetch).
+// Пересобирает ключ только тот, кто взял блокировку, поэтому истечение популярного ключа не бьет по БД
+@Component
+@Slf4j
+public class RedisCache {
+    // SET key value EX ttl для каждого ключа - одна атомарная команда вместо MSET + N x EXPIRE
+    private static final String SET_ALL_WITH_TTL = """
+            for i, key in ipairs(KEYS) do
+                redis.call('SET', key, ARGV[i + 1], 'EX', ARGV[1])
+            end
+            return 'OK'
+            """;
+    // Снимаем только свою блокировку: чужую, взятую после истечения нашей, не трогаем
+    private static final String RELEASE_LOCK = """
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """;
+    // Счетчик поколения живет намного дольше любой записи: когда он истечет и начнется с нуля,
+    // записей старого нулевого поколения уже не будет. Поэтому счетчики по сущностям (карточке, пользователю) не копятся
+    private static final String NEXT_GENERATION = """
+            local generation = redis.call('INCR', KEYS[1])
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return generation
+            """;
+    private static final Duration GENERATION_TTL = Duration.ofDays(1);
+    private static final int SCAN_BATCH = 500;
+    // Время устаревания (мс) + время сборки (мс)
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES;
+    private static final long LOCK_POLL_MS = 50;
+    // Слоты номеров удалений, ключи раскладываются по ним хешем
+    private static final int EVICTION_SLOTS = 4096;
+
+    private final RedisCommands<String, byte[]> redisCommands;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper formatMapper;
+    private final CacheCompression compression;
+    private final Duration defaultTtl;
+    private final String keyPrefix;
+    private final Duration staleTtl;
+    private final double beta;
+    private final long lockTtlMs;
+    private final long lockWaitMs;
+    private final Executor executor;
+    // null, если запись после ответа выключена (redis.cache.write-behind.enabled)
+    private final ThreadPoolExecutor writeExecutor;
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final Counter evictedCounter;
+    private final Map<JavaType, CacheSerializer<?>> serializers = new ConcurrentHashMap<>();
+    // Ключи, которые эта реплика уже обновляет в фоне - чтобы не ходить в Redis за блокировкой на каждый запрос
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    // Номер последнего удаления ключа (по слоту его хеша). Значение, собранное до удаления своего ключа,
+    // в Redis не пишется: иначе запись после ответа вернет то, что только что удалили. Разные ключи делят
+    // слот, поэтому лишний пропуск возможен - это всего лишь промах при следующем чтении
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLongArray evictedAt = new AtomicLongArray(EVICTION_SLOTS);
+
+    public RedisCache(RedisCommands<String, byte[]> binaryRedisCommands,
+                      ObjectMapper objectMapper,
+                      CacheProperties properties,
+                      Executor executor,
+                      MeterRegistry meterRegistry) {
+        this.redisCommands = binaryRedisCommands;
+        this.objectMapper = objectMapper;
+        this.formatMapper = properties.getFormat().mapper(objectMapper);
+        this.compression = new CacheCompression(properties.getCompression().isEnabled(),
+                properties.getCompression().getThresholdBytes());
+        this.defaultTtl = Duration.ofSeconds(properties.getTtlSeconds());
+        this.keyPrefix = properties.getKeyVersion() + ":";
+        this.staleTtl = Duration.ofSeconds(properties.getRefresh().getStaleSeconds());
+        this.beta = properties.getRefresh().getBeta();
+        this.lockTtlMs = properties.getRefresh().getLockTtlMs();
+        this.lockWaitMs = properties.getRefresh().getLockWaitMs();
+        this.executor = executor;
+
+        CacheProperties.WriteBehind writeBehind = properties.getWriteBehind();
+        if (writeBehind.isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cache-write-");
+            threadFactory.setDaemon(true);
+            this.writeExecutor = new ThreadPoolExecutor(writeBehind.getThreads(), writeBehind.getThreads(),
+                    0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(writeBehind.getQueueCapacity()), threadFactory);
+            // executor.queued, executor.active и т.д. с тегом name=cache-writes
+            ExecutorServiceMetrics.monitor(meterRegistry, writeExecutor, "cache-writes");
+        } else {
+            this.writeExecutor = null;
+        }
+        this.writtenCounter = meterRegistry.counter("cache.writes", "result", "written");
+        this.droppedCounter = meterRegistry.counter("cache.writes", "result", "dropped");
+        this.failedCounter = meterRegistry.counter("cache.writes", "result", "failed");
+        this.evictedCounter = meterRegistry.counter("cache.writes", "result", "evicted");
+    }
+
+    // Дописываем то, что уже в очереди, но не дольше пары секунд
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+            writeExecutor.awaitTermination(2, TimeUnit.SECONDS);
+        }
+    }
+
+    private record Entry<T>(T value, long staleAt, int loadMillis) {
+        boolean isStale(long now) {
+            return now >= staleAt;
+        }
+    }
+
+    private record Loaded<T>(T value, int loadMillis) {
+    }
+
+    @FunctionalInterface
+    private interface CacheWrite {
+        void write() throws SerializationException;
+    }
+
+    public <T> CacheSerializer<T> serializer(Class<T> type) {
+        return serializer(objectMapper.constructType(type));
+    }
+
+    public <T> CacheSerializer<T> serializer(TypeReference<T> type) {
+        return serializer(objectMapper.constructType(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CacheSerializer<T> serializer(JavaType type) {
+        return (CacheSerializer<T>) serializers.computeIfAbsent(type,
+                t -> new JacksonCacheSerializer<>(formatMapper, t, compression));
+    }
+
+    public <T> Optional<T> get(String key, Class<T> type) {
+        return get(key, serializer(type));
+    }
+
+    public <T> Optional<T> get(String key, TypeReference<T> type) {
+        return get(key, serializer(type));
+    }
+
+    // Только свежее значение: устаревшее отдает лишь getOrLoad, который тут же запускает пересборку
+    public <T> Optional<T> get(String key, CacheSerializer<T> serializer) {
+        byte[] value = redisCommands.get(keyPrefix + key);
+        if (value == null) {
+            return Optional.empty();
+        }
+        Entry<T> entry = readOrEvict(key, value, serializer);
+        if (entry == null || entry.isStale(System.currentTimeMillis())) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(entry.value());
+    }
+
+    public <T, E extends Exception> T getOrLoad(String key, Class<T> type, CacheLoader<T, E> loader) throws E {
+        return getOrLoad(key, serializer(type), defaultTtl, loader);
+    }
+
+    public <T, E extends Exception> T getOrLoad(String key, CacheSerializer<T> serializer, Duration ttl,
+                                                CacheLoader<T, E> loader) throws E {
+        byte[] value = redisCommands.get(keyPrefix + key);
+        Entry<T> entry = value == null ? null : readOrEvict(key, value, serializer);
+
+        if (entry != null) {
+            if (shouldRefresh(entry)) {
+                refreshInBackground(key, serializer, ttl, loader);
+            }
+            return entry.value();
+        }
+
+        return loadUnderLock(key, serializer, ttl, loader);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void put(String key, T value) throws SerializationException {
+        put(key, value, serializer((Class<T>) value.getClass()));
+    }
+
+    public <T> void put(String key, T value, CacheSerializer<T> serializer) throws SerializationException {
+        put(key, value, serializer, defaultTtl);
+    }
+
+    public <T> void put(String key, T value, CacheSerializer<T> serializer, Duration ttl) throws SerializationException {
+        write(key, value, serializer, ttl, 0);
+    }
+
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type) {
+        return getAll(keys, serializer(type));
+    }
+
+    // Найденные свежие значения по ключам, отсутствующих ключей в ответе нет
+    public <T> Map<String, T> getAll(Collection<String> keys, CacheSerializer<T> serializer) {
+        Map<String, T> result = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        List<String> requested = new ArrayList<>(keys);
+        List<KeyValue<String, byte[]>> values = redisCommands.mget(prefixed(requested));
+        long now = System.currentTimeMillis();
+        // MGET отвечает в порядке запрошенных ключей
+        for (int i = 0; i < values.size(); i++) {
+            KeyValue<String, byte[]> keyValue = values.get(i);
+            if (keyValue.hasValue()) {
+                String key = requested.get(i);
+                Entry<T> entry = readOrEvict(key, keyValue.getValue(), serializer);
+                if (entry != null && entry.value() != null && !entry.isStale(now)) {
+                    result.put(key, entry.value());
+                }
+            }
+        }
+        return result;
+    }
+
+    public <T> void putAll(Map<String, T> values, Class<T> type) throws SerializationException {
+        putAll(values, serializer(type), defaultTtl);
+    }
+
+    public <T> void putAll(Map<String, T> values, CacheSerializer<T> serializer) throws SerializationException {
+        putAll(values, serializer, defaultTtl);
+    }
+
+    public <T> void putAll(Map<String, T> values, CacheSerializer<T> serializer, Duration ttl) throws SerializationException {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        long staleAt = System.currentTimeMillis() + ttl.toMillis();
+        List<String> keys = new ArrayList<>(values.size());
+        List<byte[]> args = new ArrayList<>(values.size() + 1);
+        args.add(String.valueOf(ttl.plus(staleTtl).toSeconds()).getBytes(StandardCharsets.US_ASCII));
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            keys.add(keyPrefix + entry.getKey());
+            args.add(withHeader(serializer.serialize(entry.getValue()), staleAt, 0));
+        }
+
+        redisCommands.eval(SET_ALL_WITH_TTL, ScriptOutputType.STATUS, keys.toArray(new String[0]), args.toArray(new byte[0][]));
+    }
+
+    // Как putAll, но сериализация и запись идут после ответа, в пуле записи кеша
+    public <T> void putAllBehind(Map<String, T> values, Class<T> type) {
+        putAllBehind(values, type, evictionEpoch());
+    }
+
+    // since - evictionEpoch() до чтения значений: ключи, удаленные после него, не пишутся
+    public <T> void putAllBehind(Map<String, T> values, Class<T> type, long since) {
+        if (values.isEmpty()) {
+            return;
+        }
+        CacheSerializer<T> serializer = serializer(type);
+        writeBehind(values.size() + " entries", () -> {
+            Map<String, T> fresh = new LinkedHashMap<>(values);
+            fresh.keySet().removeIf(key -> evictedSince(key, since));
+            putAll(fresh, serializer, defaultTtl);
+            // Удаление между проверкой и записью: стираем записанное следом
+            String[] evicted = fresh.keySet().stream()
+                    .filter(key -> evictedSince(key, since))
+                    .toArray(String[]::new);
+            if (evicted.length > 0) {
+                redisCommands.del(prefixed(List.of(evicted)));
+            }
+            if (fresh.size() < values.size() || evicted.length > 0) {
+                evictedCounter.increment();
+            }
+        }, () -> {});
+    }
+
+    // Сколько ключей было удалено
+    public long evict(String... keys) {
+        if (keys.length == 0) {
+            return 0;
+        }
+        markEvicted(keys);
+        Long deleted = redisCommands.del(prefixed(List.of(keys)));
+        return deleted == null ? 0 : deleted;
+    }
+
+    // Номер, с которым сравниваются удаления: берется до чтения значения, которое потом запишется в кеш
+    public long evictionEpoch() {
+        return evictions.get();
+    }
+
+    // Отмечает удаление ключей, не трогая Redis, - например, когда их удалила другая реплика
+    public void markEvicted(String... keys) {
+        for (String key : keys) {
+            long epoch = evictions.incrementAndGet();
+            evictedAt.accumulateAndGet(evictionSlot(key), epoch, Math::max);
+        }
+    }
+
+    public boolean evictedSince(String key, long since) {
+        return evictedAt.get(evictionSlot(key)) > since;
+    }
+
+    private static int evictionSlot(String key) {
+        return Math.floorMod(key.hashCode(), EVICTION_SLOTS);
+    }
+
+    // Только для обслуживания (CacheMaintenanceEndpoint), не для запросов: удаляет ключи кеша по glob шаблону
+    // (без префикса версии). SCAN идет порциями и не блокирует Redis, как KEYS, но все равно обходит все ключи
+    public long evictMatching(String pattern) {
+        ScanArgs args = ScanArgs.Builder.matches(keyPrefix + pattern).limit(SCAN_BATCH);
+        long deleted = 0;
+        KeyScanCursor<String> cursor = redisCommands.scan(args);
+        while (true) {
+            if (!cursor.getKeys().isEmpty()) {
+                markEvicted(cursor.getKeys().stream()
+                        .map(key -> key.substring(keyPrefix.length()))
+                        .toArray(String[]::new));
+                deleted += redisCommands.unlink(cursor.getKeys().toArray(new String[0]));
+            }
+            if (cursor.isFinished()) {
+                return deleted;
+            }
+            cursor = redisCommands.scan(cursor, args);
+        }
+    }
+
+    // Поколение пространства ключей входит в ключи его записей: сброс всего пространства - один INCR,
+    // а записи прошлых поколений больше не читаются и истекают по TTL
+    public long generation(String namespace) {
+        byte[] value = redisCommands.get(generationKey(namespace));
+        return value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+
+    public long nextGeneration(String namespace) {
+        return redisCommands.eval(NEXT_GENERATION, ScriptOutputType.INTEGER, new String[]{generationKey(namespace)},
+                String.valueOf(GENERATION_TTL.toMillis()).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // XFetch: чем ближе устаревание и чем дольше сборка, тем вероятнее, что этот запрос начнет ее досрочно.
+    // Так разные запросы и реплики обновляют ключ в разное время, а не все разом в момент истечения
+    private boolean shouldRefresh(Entry<?> entry) {
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        double gap = entry.loadMillis() * beta * -Math.log(random);
+        return System.currentTimeMillis() + gap >= entry.staleAt();
+    }
+
+    private <T, E extends Exception> void refreshInBackground(String key, CacheSerializer<T> serializer, Duration ttl,
+                                                              CacheLoader<T, E> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        String lockKey = lockKey(key);
+        byte[] token = lockToken();
+        if (!tryLock(lockKey, token)) {
+            // Ключ уже пересобирает другая реплика
+            refreshing.remove(key);
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    long since = evictionEpoch();
+                    Loaded<T> loaded = load(loader);
+                    if (loaded.value() != null) {
+                        writeUnlessEvicted(key, since, () -> write(key, loaded.value(), serializer, ttl, loaded.loadMillis()));
+                    }
+                } catch (Exception e) {
+                    // Старое значение доживет до конца stale-seconds, следующий запрос попробует снова
+                    log.warn("Background refresh of {} failed: {}", key, e.getMessage());
+                } finally {
+                    unlock(lockKey, token);
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            unlock(lockKey, token);
+            refreshing.remove(key);
+        }
+    }
+
+    private <T, E extends Exception> T loadUnderLock(String key, CacheSerializer<T> serializer, Duration ttl,
+                                                     CacheLoader<T, E> loader) throws E {
+        String lockKey = lockKey(key);
+        byte[] token = lockToken();
+        if (tryLock(lockKey, token)) {
+            // Блокировку снимает запись в кеш, когда значение уже лежит в Redis: иначе соседи начнут свою сборку
+            boolean handedOver = false;
+            try {
+                T value = loadAndWriteBehind(key, serializer, ttl, loader, () -> unlock(lockKey, token));
+                handedOver = true;
+                return value;
+            } finally {
+                if (!handedOver) {
+                    unlock(lockKey, token);
+                }
+            }
+        }
+
+        // Ключ собирает другой поток или реплика - ждем его результат
+        long deadline = System.currentTimeMillis() + lockWaitMs;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LOCK_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Optional<T> loaded = get(key, serializer);
+            if (loaded.isPresent()) {
+                return loaded.get();
+            }
+        }
+
+        // Не дождались - собираем сами, чтобы запрос не ждал медленную сборку бесконечно
+        return loadAndWriteBehind(key, serializer, ttl, loader, () -> {});
+    }
+
+    private <T, E extends Exception> T loadAndWriteBehind(String key, CacheSerializer<T> serializer, Duration ttl,
+                                                          CacheLoader<T, E> loader, Runnable afterWrite) throws E {
+        long since = evictionEpoch();
+        Loaded<T> loaded = load(loader);
+        if (loaded.value() == null) {
+            afterWrite.run();
+        } else {
+            writeBehind(key, () -> writeUnlessEvicted(key, since,
+                    () -> write(key, loaded.value(), serializer, ttl, loaded.loadMillis())), afterWrite);
+        }
+        return loaded.value();
+    }
+
+    private <T, E extends Exception> Loaded<T> load(CacheLoader<T, E> loader) throws E {
+        long start = System.nanoTime();
+        T value = loader.load();
+        return new Loaded<>(value, (int) Math.min(Integer.MAX_VALUE, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    // Ответ уходит сразу, сериализация и запись в Redis идут в отдельном ограниченном пуле.
+    // При полной очереди запись пропускается (cache.writes{result=dropped}) - значение соберут при следующем промахе
+    private void writeBehind(String description, CacheWrite cacheWrite, Runnable afterWrite) {
+        Runnable task = () -> {
+            try {
+                cacheWrite.write();
+                writtenCounter.increment();
+            } catch (SerializationException | RuntimeException e) {
+                failedCounter.increment();
+                log.error("Cache entry {} was not written: {}", description, e.getMessage());
+            } finally {
+                afterWrite.run();
+            }
+        };
+
+        if (writeExecutor == null) {
+            task.run();
+            return;
+        }
+
+        try {
+            writeExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            droppedCounter.increment();
+            afterWrite.run();
+        }
+    }
+
+    // Значение, собранное до удаления своего ключа, не пишется, а проскочившее между проверкой и SET - стирается
+    private void writeUnlessEvicted(String key, long since, CacheWrite cacheWrite) throws SerializationException {
+        if (evictedSince(key, since)) {
+            evictedCounter.increment();
+            return;
+        }
+        cacheWrite.write();
+        if (evictedSince(key, since)) {
+            redisCommands.del(keyPrefix + key);
+            evictedCounter.increment();
+        }
+    }
+
+    private <T> void write(String key, T value, CacheSerializer<T> serializer, Duration ttl, int loadMillis) throws SerializationException {
+        byte[] payload = withHeader(serializer.serialize(value), System.currentTimeMillis() + ttl.toMillis(), loadMillis);
+        redisCommands.set(keyPrefix + key, payload, SetArgs.Builder.ex(ttl.plus(staleTtl)));
+    }
+
+    private boolean tryLock(String lockKey, byte[] token) {
+        return "OK".equals(redisCommands.set(lockKey, token, SetArgs.Builder.nx().px(lockTtlMs)));
+    }
+
+    private void unlock(String lockKey, byte[] token) {
+        try {
+            redisCommands.eval(RELEASE_LOCK, ScriptOutputType.INTEGER, new String[]{lockKey}, token);
+        } catch (RuntimeException e) {
+            // Блокировка сама истечет через lock-ttl-ms
+            log.warn("Cache lock {} was not released: {}", lockKey, e.getMessage());
+        }
+    }
+
+    private String generationKey(String namespace) {
+        return keyPrefix + "gen:" + namespace;
+    }
+
+    private String lockKey(String key) {
+        return keyPrefix + "lock:" + key;
+    }
+
+    private static byte[] lockToken() {
+        return UUID.randomUUID().toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] withHeader(byte[] payload, long staleAt, int loadMillis) {
+        return ByteBuffer.allocate(HEADER_BYTES + payload.length)
+                .putLong(staleAt)
+                .putInt(loadMillis)
+                .put(payload)
+                .array();
+    }
+
+    private String[] prefixed(List<String> keys) {
+        String[] result = new String[keys.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = keyPrefix + keys.get(i);
+        }
+        return result;
+    }
+
+    private <T> Entry<T> readOrEvict(String key, byte[] value, CacheSerializer<T> serializer) {
+        try {
+            if (value.length <= HEADER_BYTES) {
+                throw new SerializationException("cache entry without header");
+            }
+            ByteBuffer header = ByteBuffer.wrap(value, 0, HEADER_BYTES);
+            long staleAt = header.getLong();
+            int loadMillis = header.getInt();
+            T decoded = serializer.deserialize(Arrays.copyOfRange(value, HEADER_BYTES, value.length));
+            return new Entry<>(decoded, staleAt, loadMillis);
+        } catch (SerializationException e) {
+            log.warn("Unreadable cache entry {} was evicted: {}", key, e.getMessage());
+            redisCommands.del(keyPrefix + key);
+            return null;
+        }
+    }
+}
@@ -5,11 +5,18 @@ import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import karm.van.config.properties.CacheProperties;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@EnableConfigurationProperties(CacheProperties.class)
 public class AuthAppConfig {
     @Value("${redis.host}")
     private String redisHost;
@@ -38,7 +45,18 @@ public class AuthAppConfig {
     }
 
     @Bean
-    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection) {
-        return connection.sync();
+    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection, MeterRegistry meterRegistry) {
+        return InstrumentedRedisCommands.wrap(connection.sync(), meterRegistry);
+    }
+
+    // Значения кеша хранятся в бинарном виде (Smile/CBOR + LZ4), ключи остаются строками
+    @Bean(destroyMethod = "close")
+    public StatefulRedisConnection<String, byte[]> binaryRedisConnection(RedisClient redisClient) {
+        return redisClient.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+    }
+
+    @Bean
+    public RedisCommands<String, byte[]> binaryRedisCommands(StatefulRedisConnection<String, byte[]> binaryRedisConnection, MeterRegistry meterRegistry) {
+        return InstrumentedRedisCommands.wrap(binaryRedisConnection.sync(), meterRegistry);
     }
 }
@@ -0,0 +1,44 @@
+package karm.van.config;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.timelimiter.TimeLimiterOperator;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+// Каждый запрос к другому сервису проходит через его circuit breaker, bulkhead и дедлайн (resilience4j.*.instances.<сервис>).
+// Ответ 5xx считается ошибкой сервиса и открывает circuit breaker так же, как таймаут или обрыв соединения
+@RequiredArgsConstructor
+public class DownstreamResilienceFilter implements ExchangeFilterFunction {
+    // host:port -> имя сервиса
+    private final Map<String, String> downstreams;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        String downstream = downstreams.get(request.url().getHost() + ":" + request.url().getPort());
+
+        if (downstream == null) {
+            return next.exchange(request);
+        }
+
+        return next.exchange(request)
+                .flatMap(response -> response.statusCode().is5xxServerError()
+                        ? response.<ClientResponse>createError()
+                        : Mono.just(response))
+                .transformDeferred(TimeLimiterOperator.of(timeLimiterRegistry.timeLimiter(downstream)))
+                .transformDeferred(BulkheadOperator.of(bulkheadRegistry.bulkhead(downstream)))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreakerRegistry.circuitBreaker(downstream)));
+    }
+}
@@ -5,13 +5,17 @@ import karm.van.config.properties.AdsMicroServiceProperties;
 import karm.van.config.properties.AuthMicroServiceProperties;
 import karm.van.config.properties.CommentMicroServiceProperties;
 import karm.van.config.properties.ImageMicroServiceProperties;
+import karm.van.config.properties.JwtProperties;
 import karm.van.exception.handling.CustomAuthenticationEntryPoint;
 import karm.van.filter.JwtRequestFilter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -38,7 +42,7 @@ import java.util.concurrent.Executor;
 @EnableElasticsearchRepositories(basePackages = "karm.van.repo.elasticRepo")
 @RequiredArgsConstructor
 @EnableAsync
-@EnableConfigurationProperties({AdsMicroServiceProperties.class, ImageMicroServiceProperties.class, AuthMicroServiceProperties.class, CommentMicroServiceProperties.class})
+@EnableConfigurationProperties({AdsMicroServiceProperties.class, ImageMicroServiceProperties.class, AuthMicroServiceProperties.class, CommentMicroServiceProperties.class, JwtProperties.class})
 public class SecurityConfiguration {
 
     private final JwtRequestFilter jwtRequestFilter;
@@ -80,7 +84,9 @@ public class SecurityConfiguration {
                                 "/swagger-ui/**",
                                 "/swagger-ui.html",
                                 "/swagger-resources/**",
-                                "/webjars/**").permitAll()
+                                "/webjars/**",
+                                "/actuator/health",
+                                "/actuator/prometheus").permitAll()
                         .anyRequest().authenticated())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .csrf(CsrfConfigurer::disable)
@@ -91,7 +97,15 @@ public class SecurityConfiguration {
     }
 
     @Bean
-    public Executor getAsyncExecutor() {
+    public Executor getAsyncExecutor(Environment environment) {
+        // С spring.threads.virtual.enabled на Java 21 каждая @Async задача получает свой виртуальный поток,
+        // пул из 10 потоков больше не ограничивает блокирующие вызовы
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Async-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(4);
         executor.setMaxPoolSize(10);
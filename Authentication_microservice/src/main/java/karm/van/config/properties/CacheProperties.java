@@ -0,0 +1,51 @@
+package karm.van.config.properties;
+
+import karm.van.cache.CacheFormat;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "redis.cache")
+@Getter
+@Setter
+public class CacheProperties {
+    private long ttlSeconds = 60;
+    private CacheFormat format = CacheFormat.SMILE;
+    // Префикс всех ключей кеша. Меняется вместе с форматом: старые записи просто перестают читаться и истекают.
+    // Должен совпадать во всех сервисах - они удаляют ключи друг друга (user_*)
+    private String keyVersion = "v3";
+    private Compression compression = new Compression();
+    private Refresh refresh = new Refresh();
+    private WriteBehind writeBehind = new WriteBehind();
+
+    @Getter
+    @Setter
+    public static class Compression {
+        private boolean enabled = true;
+        // Значения меньше порога не сжимаются - на них LZ4 почти ничего не выигрывает
+        private int thresholdBytes = 1024;
+    }
+
+    @Getter
+    @Setter
+    public static class Refresh {
+        // Сколько после ttl запись еще отдается, пока ее пересобирает одна фоновая задача
+        private long staleSeconds = 30;
+        // XFetch: чем больше, тем раньше до истечения начинается досрочное обновление
+        private double beta = 1.0;
+        // Блокировка пересборки ключа, одна на все реплики. Должна пережить самую долгую сборку
+        private long lockTtlMs = 10000;
+        // Сколько при промахе ждать чужую пересборку, прежде чем собрать значение самому
+        private long lockWaitMs = 3000;
+    }
+
+    @Getter
+    @Setter
+    public static class WriteBehind {
+        // Собранное значение отдается сразу, а в Redis пишется отдельным пулом
+        private boolean enabled = true;
+        private int threads = 2;
+        // Записи сверх очереди пропускаются, а не тормозят ответы
+        private int queueCapacity = 1000;
+    }
+}
@@ -0,0 +1,33 @@
+package karm.van.config.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "microservices.http-client")
+@Getter
+@Setter
+public class HttpClientProperties {
+    private int connectTimeoutMs = 2000;
+    // Время ожидания ответа после отправки запроса
+    private int responseTimeoutMs = 5000;
+    private boolean compression = true;
+    // HTTP/2 без TLS (h2c), включать только если все сервисы его поддерживают
+    private boolean http2 = false;
+    private Pool pool = new Pool();
+    // Настройки пула для отдельных сервисов (ads, comment, image), перекрывают pool
+    private Map<String, Pool> pools = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Pool {
+        private int maxConnections = 50;
+        // Сколько запрос ждет свободное соединение, прежде чем упасть
+        private int pendingAcquireTimeoutMs = 2000;
+        private int maxIdleTimeMs = 30000;
+        private int maxLifeTimeMs = 300000;
+    }
+}
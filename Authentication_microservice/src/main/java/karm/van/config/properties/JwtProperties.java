@@ -0,0 +1,19 @@
+package karm.van.config.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "jwt")
+@Getter
+@Setter
+public class JwtProperties {
+    // Текущий ключ, которым подписываются новые токены
+    private String secretKey;
+    private String keyId = "default";
+    // Старые ключи (kid -> secret), по которым еще принимаются выданные ранее токены
+    private Map<String, String> previousKeys = new HashMap<>();
+}
@@ -30,6 +30,7 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 
 import java.nio.file.AccessDeniedException;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -57,6 +58,20 @@ public class UserController {
         }
     }
 
+    @Hidden
+    @GetMapping("/get/batch")
+    public ResponseEntity<?> getUsersDto(@RequestParam(name = "ids") List<Long> userIds,
+                                         @RequestHeader(name = "x-api-key") String apiKey){
+        try {
+            if(myUserService.checkApiKeyNotEquals(apiKey)){
+                throw new InvalidApiKeyException("Access denied");
+            }
+            return ResponseEntity.ok(myUserService.getUsers(userIds));
+        }catch (InvalidApiKeyException e){
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @Operation(
             summary = "Search user profiles",
             description = "Searches for user profiles based on optional filters like username, country, description, etc. Supports pagination."
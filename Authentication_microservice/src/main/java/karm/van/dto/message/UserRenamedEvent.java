@@ -0,0 +1,7 @@
+package karm.van.dto.message;
+
+// Уходит в finder-exchange после смены имени: сервис объявлений обновляет имя автора в своей витрине карточек
+public record UserRenamedEvent(
+        Long userId,
+        String name
+) {}
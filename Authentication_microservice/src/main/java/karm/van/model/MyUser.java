@@ -5,6 +5,7 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
@@ -36,6 +37,7 @@ public class MyUser implements Serializable {
     private String description;
 
     @ElementCollection(fetch = FetchType.EAGER)
+    @BatchSize(size = 100)
     private List<String> roles;
 
     @NotBlank(message = "First name is required")
@@ -9,6 +9,11 @@ import java.util.Collection;
 @AllArgsConstructor
 public class MyUserDetails implements UserDetails {
     private MyUser user;
+
+    public Long getId() {
+        return user.getId();
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return user.getRoles()
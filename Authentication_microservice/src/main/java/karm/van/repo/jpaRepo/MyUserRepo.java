@@ -24,4 +24,14 @@ public interface MyUserRepo extends JpaRepository<MyUser, Long> {
     Optional<MyUser> findByEmail(String email);
 
     List<MyUser> findAllByFavoriteCardsContaining(Long cardId);
+
+    // Счетчики без загрузки коллекций: профиль пересобирается и в фоне, вне сессии запроса
+    @Query("select size(u.followers) from MyUser u where u.id = :userId")
+    int countFollowers(@Param("userId") Long userId);
+
+    @Query("select size(u.following) from MyUser u where u.id = :userId")
+    int countFollowing(@Param("userId") Long userId);
+
+    @Query("select count(u) > 0 from MyUser u join u.following f where u.name = :name and f = :userId")
+    boolean isFollowing(@Param("name") String name, @Param("userId") Long userId);
 }
@@ -1,6 +1,5 @@
 package karm.van.service;
 
-import jakarta.annotation.PostConstruct;
 import karm.van.dto.response.CommentDto;
 import karm.van.dto.response.ProfileImageDtoResponse;
 import karm.van.dto.response.UserCardResponse;
@@ -9,51 +8,58 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @RequiredArgsConstructor
 @Component
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
-
-    @PostConstruct
-    public void init(){
-        webClient = WebClient.create();
-    }
+    private final WebClient webClient;
+    // Базовые адреса (prefix + host + port + endpoint) разбираются один раз, дальше к ним только дописываются id
+    private final Map<String, String> urlTemplates = new ConcurrentHashMap<>();
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(prefix + host + ":" + port + endpoint);
+        StringBuilder url = new StringBuilder(buildUrl(prefix, host, port, endpoint));
 
-        if (ids.length > 0) {
-            uriBuilder.pathSegment(ids[0].toString());
-            for (int i = 1; i < ids.length; i++) {
-                uriBuilder.pathSegment(ids[i].toString());
-            }
+        for (Long id : ids) {
+            appendPathSegment(url, id.toString());
         }
 
-        return uriBuilder.toUriString();
+        return url.toString();
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint, String... pathSegments) {
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(prefix + host + ":" + port + endpoint);
+        StringBuilder url = new StringBuilder(buildUrl(prefix, host, port, endpoint));
 
-        for (Object segment : pathSegments) {
-            uriBuilder.pathSegment(segment.toString());
+        for (String segment : pathSegments) {
+            appendPathSegment(url, UriUtils.encodePathSegment(segment, StandardCharsets.UTF_8));
         }
 
-        return uriBuilder.toUriString();
+        return url.toString();
     }
 
     public String buildUrl(String prefix, String host, String port, String endpoint) {
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(prefix + host + ":" + port + endpoint);
-        return uriBuilder.toUriString();
+        return urlTemplates.computeIfAbsent(prefix + host + ":" + port + endpoint,
+                url -> UriComponentsBuilder.fromHttpUrl(url).toUriString());
+    }
+
+    private void appendPathSegment(StringBuilder url, String segment) {
+        if (url.charAt(url.length() - 1) != '/') {
+            url.append('/');
+        }
+        url.append(segment);
     }
 
 
@@ -101,10 +107,6 @@ public class ApiService {
         return sendDeleteRequest(url, token, apiKey != null ? Optional.of(apiKey) : Optional.empty());
     }
 
-    private HttpStatusCode sendDeleteRequest(String url, String token) {
-        return sendDeleteRequest(url, token, Optional.empty());
-    }
-
     private HttpStatusCode sendDeleteRequest(String url, String token, Optional<String> apiKey) {
         return Objects.requireNonNull(
                         webClient
@@ -174,8 +176,14 @@ public class ApiService {
         }
     }
 
-    public HttpStatusCode requestToDelCard(String url, String token) {
-        return sendDeleteRequest(url,token);
+    public Mono<HttpStatusCode> requestToDelCardAsync(String url, String token) {
+        return webClient
+                .delete()
+                .uri(url)
+                .headers(headers -> headers.setBearerAuth(token))
+                .retrieve()
+                .toBodilessEntity()
+                .map(ResponseEntity::getStatusCode);
     }
 
     private HttpStatusCode sendMoveRequest(String url,String apiKey){
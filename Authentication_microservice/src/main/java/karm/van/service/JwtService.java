@@ -1,10 +1,18 @@
 package karm.van.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.impl.TextCodec;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.config.properties.JwtProperties;
+import karm.van.model.MyUserDetails;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
@@ -17,16 +25,49 @@ import java.util.function.Function;
 @RequiredArgsConstructor
 public class JwtService {
 
-    @Value("${jwt.secret-key}")
-    private String secret_key;
+    public static final long ACCESS_TOKEN_TTL = 1000 * 60 * 15; // 15 минут
 
+    private static final String REVOKED_TOKENS_KEY = "revoked-tokens:";
+
+    private final JwtProperties jwtProperties;
     private final MyUserDetailsService myUserDetailsService;
+    private final RedisCommands<String,String> redisCommands;
+
+    // Токены без kid подписаны до появления ротации ключей - проверяем их текущим ключом
+    private final SigningKeyResolverAdapter signingKeyResolver = new SigningKeyResolverAdapter() {
+        @Override
+        public byte[] resolveSigningKeyBytes(JwsHeader header, Claims claims) {
+            String keyId = header.getKeyId();
+            String secret = keyId == null || keyId.equals(jwtProperties.getKeyId())
+                    ? jwtProperties.getSecretKey()
+                    : jwtProperties.getPreviousKeys().get(keyId);
+
+            if (secret == null) {
+                throw new SignatureException("Unknown signing key: " + keyId);
+            }
+            return TextCodec.BASE64.decode(secret);
+        }
+    };
 
     // Генерация Access Token (короткое время жизни, например 15 минут)
     public String generateAccessToken(UserDetails userDetails) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("token_type", "access");
-        return createToken(claims, userDetails.getUsername(), 1000 * 60 * 15); // 15 минут
+        // Данные, по которым остальные сервисы узнают пользователя без запроса к /user/get
+        if (userDetails instanceof MyUserDetails myUserDetails) {
+            claims.put("user_id", myUserDetails.getId());
+        }
+        claims.put("roles", userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        claims.put("enabled", userDetails.isEnabled());
+        return createToken(claims, userDetails.getUsername(), ACCESS_TOKEN_TTL);
+    }
+
+    // Помечаем все выданные пользователю access токены как отозванные.
+    // Остальные сервисы проверяют токены локально и по этой метке уходят на /auth/validate
+    public void revokeAccessTokens(String username) {
+        redisCommands.set(REVOKED_TOKENS_KEY + username,
+                String.valueOf(System.currentTimeMillis()),
+                SetArgs.Builder.px(ACCESS_TOKEN_TTL));
     }
 
     public String generateRecoveryToken(String email, String password) {
@@ -47,11 +88,12 @@ public class JwtService {
     // Создание токена
     private String createToken(Map<String, Object> claims, String subject, long expirationTime) {
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, jwtProperties.getKeyId())
                 .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expirationTime))
-                .signWith(SignatureAlgorithm.HS256, secret_key)
+                .signWith(SignatureAlgorithm.HS256, jwtProperties.getSecretKey())
                 .compact();
     }
 
@@ -134,8 +176,7 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser().setSigningKey(secret_key).parseClaimsJws(token).getBody();
+        return Jwts.parser().setSigningKeyResolver(signingKeyResolver).parseClaimsJws(token).getBody();
     }
 
 }
-
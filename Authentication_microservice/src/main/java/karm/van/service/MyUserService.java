@@ -3,8 +3,8 @@ package karm.van.service;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.lettuce.core.api.sync.RedisCommands;
 import jakarta.servlet.http.HttpServletRequest;
+import karm.van.cache.RedisCache;
 import karm.van.config.properties.AdsMicroServiceProperties;
 import karm.van.config.properties.AuthMicroServiceProperties;
 import karm.van.config.properties.CommentMicroServiceProperties;
@@ -12,6 +12,7 @@ import karm.van.config.properties.ImageMicroServiceProperties;
 import karm.van.dto.elastic.UserRequest;
 import karm.van.dto.request.RecoveryRequest;
 import karm.van.dto.request.UserDtoRequest;
+import karm.van.dto.message.UserRenamedEvent;
 import karm.van.dto.request.UserPatchRequest;
 import karm.van.dto.response.*;
 import karm.van.dto.rollBack.RollBackCommand;
@@ -38,11 +39,11 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 
 import java.nio.file.AccessDeniedException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -50,7 +51,7 @@ import java.util.stream.Collectors;
 @Log4j2
 public class MyUserService {
     private final MyUserRepo userRepo;
-    private final RedisCommands<String,String> redisCommands;
+    private final RedisCache redisCache;
     private final ObjectMapper objectMapper;
     private final PasswordEncoder passwordEncoder;
     private final AdsMicroServiceProperties adsProperties;
@@ -70,10 +71,11 @@ public class MyUserService {
     @Value("${server.port}")
     private String serverPort;
 
-    public UserDtoResponse getUser(Authentication authentication, Optional<Long> userIdOpt) throws UsernameNotFoundException, BadCredentialsException {
+    @Value("${microservices.http-client.fan-out-concurrency:8}")
+    private int fanOutConcurrency;
 
-        // Лямбда-функция для создания UserDtoResponse
-        Function<MyUser, UserDtoResponse> mapToDto = user -> new UserDtoResponse(
+    private UserDtoResponse toUserDto(MyUser user) {
+        return new UserDtoResponse(
                 user.getId(),
                 user.getName(),
                 user.getEmail(),
@@ -85,18 +87,28 @@ public class MyUserService {
                 user.getRoleInCommand(),
                 user.getSkills()
         );
+    }
 
+    public UserDtoResponse getUser(Authentication authentication, Optional<Long> userIdOpt) throws UsernameNotFoundException, BadCredentialsException {
         // Если передан userId, ищем по ID, иначе по username из токена
         return userIdOpt.map(userId ->
                         userRepo.findById(userId)
-                                .map(mapToDto)
+                                .map(this::toUserDto)
                                 .orElseThrow(() -> new UsernameNotFoundException("User not found with this ID")))
                 .orElseGet(() ->
                         userRepo.findByName(authentication.getName())
-                                .map(mapToDto)
+                                .map(this::toUserDto)
                                 .orElseThrow(() -> new UsernameNotFoundException("User not found with this username")));
     }
 
+    // Пользователи, которых нет в базе, просто отсутствуют в ответе
+    public List<UserDtoResponse> getUsers(List<Long> userIds) {
+        return userRepo.findAllById(userIds.stream().distinct().toList())
+                .stream()
+                .map(this::toUserDto)
+                .toList();
+    }
+
     private List<UserCardResponse> sendRequestToGetUserCards(String token, Long userId) throws CardsNotGetedException {
         String uri = apiService.buildUrl(
                 adsProperties.getPrefix(),
@@ -137,28 +149,26 @@ public class MyUserService {
         }
     }
 
-    private boolean redisKeyExist(String key){
-        Long redisResult = redisCommands.exists(key);
-        return redisResult!=null && redisResult>0;
-    }
-
     public FullUserDtoResponse getFullUserData(Authentication authentication,HttpServletRequest request, String name) throws CardsNotGetedException, ImageNotGetedException, JsonProcessingException {
         MyUser user = userRepo.findByName(name)
                 .orElseThrow(()->new UsernameNotFoundException("User with this name doesn't exist"));
 
         String redisKey = "user_"+user.getId();
-        System.out.println("FULL DATA REDIS KEY: "+redisKey);
-        if (redisKeyExist(redisKey)){
-            return objectMapper.readValue(redisCommands.get(redisKey), FullUserDtoResponse.class);
-        }else {
-            return cacheUserInfo(authentication,request,user,redisKey);
+        log.debug("Full data redis key: {}", redisKey);
+        // Запрос и его атрибуты нельзя трогать из фоновой пересборки - забираем все нужное сейчас
+        String token = (String) request.getAttribute("jwtToken");
+        String viewerName = authentication.getName();
+        try {
+            return redisCache.getOrLoad(redisKey, FullUserDtoResponse.class, () -> loadUserInfo(token, viewerName, user));
+        } catch (CardsNotGetedException | ImageNotGetedException | JsonProcessingException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // loadUserInfo других проверяемых исключений не бросает
+            throw new IllegalStateException(e);
         }
     }
 
-    private FullUserDtoResponse cacheUserInfo(Authentication authentication,HttpServletRequest request, MyUser user, String redisKey) throws CardsNotGetedException, ImageNotGetedException, JsonProcessingException {
-
-        String token = (String) request.getAttribute("jwtToken");
-
+    private FullUserDtoResponse loadUserInfo(String token, String viewerName, MyUser user) throws CardsNotGetedException, ImageNotGetedException, JsonProcessingException {
         try {
             List<UserCardResponse> cards = sendRequestToGetUserCards(token,user.getId());
             Long userProfileImage = user.getProfileImage();
@@ -182,17 +192,14 @@ public class MyUserService {
                     user.getCountry(),
                     user.getRoleInCommand(),
                     user.getSkills(),
-                    user.getFollowers().size(),
-                    user.getFollowing().size(),
-                    userRepo.getByName(authentication.getName()).getFollowing().contains(user.getId()),
+                    userRepo.countFollowers(user.getId()),
+                    userRepo.countFollowing(user.getId()),
+                    userRepo.isFollowing(viewerName, user.getId()),
                     user.isEnable(),
                     imageDtoResponse,
                     cards
             );
 
-            String objectAsString = objectMapper.writeValueAsString(fullUserDtoResponse);
-            redisCommands.set(redisKey,objectAsString);
-            redisCommands.expire(redisKey,60);
             return fullUserDtoResponse;
         } catch (Exception e){
             log.error("class: "+e.getClass()+" message: "+e.getMessage());
@@ -260,25 +267,6 @@ public class MyUserService {
         producer.saveInElastic(userDocument);
     }
 
-    private void sendRequestToDelUserCard(String token, Long cardId) throws UserNotDeletedException {
-        try {
-            HttpStatusCode httpStatusCode = apiService.requestToDelCard(
-                    apiService.buildUrl(adsProperties.getPrefix(),
-                            adsProperties.getHost(),
-                            adsProperties.getPort(),
-                            adsProperties.getEndpoints().getDelCard(),
-                            cardId),token);
-            if (httpStatusCode != HttpStatus.OK){
-                throw new UserNotDeletedException("Due to an error on the server, your this user has not been deleted");
-            }
-        } catch (UserNotDeletedException e){
-            throw e;
-        } catch (Exception e){
-            log.error("class: "+e.getClass()+" message: "+e.getMessage());
-            throw new UserNotDeletedException("Due to an error on the server, your this user has not been deleted");
-        }
-    }
-
     private void moveProfileImageToTrashBucket(Long imageId) throws ImageNotMovedException {
         String imageUrl = apiService.buildUrl(
                 imageProperties.getPrefix(),
@@ -381,16 +369,25 @@ public class MyUserService {
     }
 
     private void deleteAllUserCards(MyUser user, String token) throws CardNotDeletedException {
+        // Запросы на удаление идут параллельно, но не больше fanOutConcurrency одновременно и без блокировки потоков
+        List<Long> cards = List.copyOf(user.getCards());
+        List<HttpStatusCode> statuses;
         try {
-            user.getCards().parallelStream()
-                    .forEach(card-> {
-                        try {
-                            sendRequestToDelUserCard(token,card);
-                        } catch (UserNotDeletedException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
+            statuses = Flux.fromIterable(cards)
+                    .flatMap(cardId -> apiService.requestToDelCardAsync(
+                            apiService.buildUrl(adsProperties.getPrefix(),
+                                    adsProperties.getHost(),
+                                    adsProperties.getPort(),
+                                    adsProperties.getEndpoints().getDelCard(),
+                                    cardId),token), fanOutConcurrency)
+                    .collectList()
+                    .block();
         }catch (Exception e){
+            log.error("class: "+e.getClass()+" message: "+e.getMessage());
+            throw new CardNotDeletedException();
+        }
+
+        if (statuses == null || statuses.stream().anyMatch(status -> status != HttpStatus.OK)){
             throw new CardNotDeletedException();
         }
     }
@@ -439,10 +436,11 @@ public class MyUserService {
                 deleteImageFromMinio(userProfileImageId,token);
             }
 
-            deleteRedisKeysByPatterns(user.getId(),user.getFollowing(),user.getFollowers());
+            invalidateSubscriptionCaches(user.getId(),user.getFollowing(),user.getFollowers());
             userRepo.delete(unsubscribeUser(user));
             delUserInElastic(user);
-            redisCommands.del(redisKey);
+            redisCache.evict(redisKey);
+            jwtService.revokeAccessTokens(user.getName());
         }catch (ImageNotMovedException e){
             log.error("Error moving the image");
             throw e;
@@ -545,7 +543,9 @@ public class MyUserService {
 
         String redisKey = "user_"+user.getId();
 
-        System.out.println("PATCH REDIS KEY: "+redisKey);
+        log.debug("Patch redis key: {}", redisKey);
+
+        String oldName = user.getName();
 
         userPatchRequest.name().ifPresent(name -> {
             if (name.trim().isEmpty()) {
@@ -604,7 +604,11 @@ public class MyUserService {
         });
 
         userRepo.save(user);
-        redisCommands.del(redisKey);
+        redisCache.evict(redisKey);
+        if (!oldName.equals(user.getName())){
+            jwtService.revokeAccessTokens(oldName);
+            producer.sendUserRenamed(new UserRenamedEvent(user.getId(), user.getName()));
+        }
         patchInElastic(user.getId(),userPatchRequest);
     }
 
@@ -619,7 +623,7 @@ public class MyUserService {
                 userPatchRequest.country(),
                 userPatchRequest.roleInCommand(),
                 userPatchRequest.skills());
-        System.out.println("ОТПРАВЛЕНО на PATCH");
+        log.debug("User patch sent to elastic");
         producer.patchInElastic(userRequest);
     }
 
@@ -642,9 +646,7 @@ public class MyUserService {
             cards.add(cardId);
         }
 
-        if (redisKeyExist(redisKey)){
-            redisCommands.del(redisKey);
-        }
+        redisCache.evict(redisKey);
 
         userRepo.save(user);
 
@@ -661,16 +663,19 @@ public class MyUserService {
                 .orElseThrow(() -> new UsernameNotFoundException("User with this name doesn't exist"));
         String redisKey = "favorite-cards:"+currentUserName;
 
-        if (redisKeyExist(redisKey)){
-            return objectMapper.readValue(redisCommands.get(redisKey), new TypeReference<>(){});
-        }else {
-            List<Long> favoriteCardsList = user.getFavoriteCards();
-            String objectAsString = objectMapper.writeValueAsString(favoriteCardsList);
-            redisCommands.set(redisKey,objectAsString);
-            redisCommands.expire(redisKey,60);
+        Optional<List<Long>> cached = redisCache.get(redisKey, new TypeReference<List<Long>>(){});
+        if (cached.isPresent()){
+            return cached.get();
+        }
 
-            return favoriteCardsList;
+        List<Long> favoriteCardsList = user.getFavoriteCards();
+        try {
+            redisCache.put(redisKey, favoriteCardsList, redisCache.serializer(new TypeReference<List<Long>>(){}));
+        } catch (SerializationException e) {
+            log.error("An error occurred during serialization for redis: "+e.getMessage());
         }
+
+        return favoriteCardsList;
     }
 
     @Transactional
@@ -687,14 +692,13 @@ public class MyUserService {
                 .orElseThrow(() -> new UsernameNotFoundException("User with this name doesn't exist"));
 
         String redisKey = "user_"+user.getId();
-        if (redisKeyExist(redisKey)){
-            redisCommands.del(redisKey);
-        }
+        redisCache.evict(redisKey);
 
         user.setEnable(false);
         user.setUnlockAt(LocalDateTime.of(year,month,dayOfMonth,hours,minutes,seconds));
         user.setBlockReason(reason);
         userRepo.save(user);
+        jwtService.revokeAccessTokens(userName);
     }
 
     @Transactional
@@ -706,9 +710,7 @@ public class MyUserService {
             boolean roleRemove = false;
 
             String redisKey = "user_"+user.getId();
-            if (redisKeyExist(redisKey)){
-                redisCommands.del(redisKey);
-            }
+            redisCache.evict(redisKey);
 
             if (roles.contains("ADMIN")){
                 roles.remove("ADMIN");
@@ -718,6 +720,7 @@ public class MyUserService {
             }
 
             userRepo.save(user);
+            jwtService.revokeAccessTokens(userName);
 
             if (roleRemove){
                 return "User downgraded";
@@ -732,9 +735,7 @@ public class MyUserService {
                 .orElseThrow(() -> new UsernameNotFoundException("User with this name doesn't exist"));
 
         String redisKey = "user_"+user.getId();
-        if (redisKeyExist(redisKey)){
-            redisCommands.del(redisKey);
-        }
+        redisCache.evict(redisKey);
 
         user.setEnable(true);
         user.setUnlockAt(LocalDateTime.now());
@@ -766,36 +767,29 @@ public class MyUserService {
     }
 
     @Transactional
-    public UUID changeAdminKey() {
+    public UUID changeAdminKey() throws SerializationException {
         AdminKey key = keyRepo.getReferenceById(1);
         String cacheKey = "adminKey:"+key;
 
-        Long cacheResult = redisCommands.exists(cacheKey);
-        if (cacheResult!=null && cacheResult>0){
-            redisCommands.del(cacheKey);
-        }
-
         UUID newKey = UUID.randomUUID();
         key.setAdminKey(newKey);
         keyRepo.save(key);
 
-        redisCommands.set(cacheKey,newKey.toString());
-        redisCommands.expire(cacheKey,60);
+        redisCache.put(cacheKey, newKey);
         return newKey;
     }
 
-    public UUID getAdminKey() {
+    public UUID getAdminKey() throws SerializationException {
         UUID adminKey = keyRepo.getReferenceById(1).getAdminKey();
         String cacheKey = "adminKey:"+adminKey;
 
-        Long cacheResult = redisCommands.exists(cacheKey);
-        if (cacheResult!=null && cacheResult>0){
-            return UUID.fromString(redisCommands.get(cacheKey));
-        }else {
-            redisCommands.set(cacheKey,adminKey.toString());
-            redisCommands.expire(cacheKey,60);
-            return adminKey;
+        Optional<UUID> cached = redisCache.get(cacheKey, UUID.class);
+        if (cached.isPresent()){
+            return cached.get();
         }
+
+        redisCache.put(cacheKey, adminKey);
+        return adminKey;
     }
 
     @Transactional
@@ -804,7 +798,7 @@ public class MyUserService {
 
         for (MyUser user : usersWithCard) {
             user.getFavoriteCards().remove(cardId);
-            redisCommands.del("favorite-cards:"+user.getName());
+            redisCache.evict("favorite-cards:"+user.getName());
         }
 
         userRepo.saveAll(usersWithCard);
@@ -825,13 +819,9 @@ public class MyUserService {
 
         String redisFinalKey = redisKey.toString();
 
-        Long redisResult = redisCommands.exists(redisFinalKey);
-        if (redisResult != null && redisResult > 0) {
-            try {
-                return objectMapper.readValue(redisCommands.get(redisFinalKey), UserPageResponse.class);
-            } catch (JsonProcessingException e) {
-                throw new SerializationException("Error while deserializing from Redis");
-            }
+        Optional<UserPageResponse> cached = redisCache.get(redisFinalKey, UserPageResponse.class);
+        if (cached.isPresent()) {
+            return cached.get();
         }
 
         PageRequest pageRequest = PageRequest.of(pageNumber, limit);
@@ -851,7 +841,7 @@ public class MyUserService {
                 username, firstname, lastname, skills, roleInCommand, description, country, pageRequest
         );
 
-        System.out.println("Result count: " + page.getTotalElements());
+        log.debug("Result count: {}", page.getTotalElements());
 
         UserPageResponse userPageResponse = new UserPageResponse(
                 UserMapper.toDto(page.getContent()),
@@ -862,24 +852,10 @@ public class MyUserService {
                 page.getNumberOfElements()
         );
 
-        cacheUsers(userPageResponse,redisFinalKey);
+        redisCache.put(redisFinalKey, userPageResponse);
         return userPageResponse;
     }
 
-    private <T> void cacheUsers(T objectToCash, String key) throws SerializationException {
-        String objectAsString;
-
-        try {
-            objectAsString = objectMapper.writeValueAsString(objectToCash);
-        } catch (JsonProcessingException e) {
-            throw new SerializationException("an error occurred during deserialization");
-        }
-
-        redisCommands.set(key,objectAsString);
-        redisCommands.expire(key,60);
-
-    }
-
     @Transactional
     public String toggleFollowing(Authentication authentication, String userName) {
         MyUser author = userRepo.findByName(userName)
@@ -912,74 +888,53 @@ public class MyUserService {
         String authorRedisKey = "user_" + author.getId();
         String followerRedisKey = "user_" + follower.getId();
 
-        deleteRedisKeysByPatterns(author.getId());
-        deleteRedisKeysByPatterns(follower.getId());
+        invalidateSubscriptionCaches(author.getId());
+        invalidateSubscriptionCaches(follower.getId());
 
-        redisCommands.del(authorRedisKey, followerRedisKey);
+        redisCache.evict(authorRedisKey, followerRedisKey);
 
         return action;
     }
 
-    private void deleteRedisKeysByPatterns(Long userId) {
-        System.out.println("All Redis keys: " + redisCommands.keys("*"));
-
-        List<String> followingKeys = redisCommands.keys("following:" + userId + ":pageNumber:*");
-        List<String> followersKeys = redisCommands.keys("followers:" + userId + ":pageNumber:*");
-
-        System.out.println("Followings: "+followingKeys);
-        System.out.println("Followers: "+followersKeys);
-
-        if (!followingKeys.isEmpty()) {
-            redisCommands.del(followingKeys.toArray(new String[0]));
-        }
+    // Страницы подписок и подписчиков строятся с поколением пользователя, сброс - один INCR
+    private void invalidateSubscriptionCaches(Long userId) {
+        redisCache.nextGeneration(subscriptionsNamespace(userId));
+    }
 
-        if (!followersKeys.isEmpty()) {
-            redisCommands.del(followersKeys.toArray(new String[0]));
-        }
+    private static String subscriptionsNamespace(Long userId) {
+        return "subscriptions:" + userId;
     }
 
     @Async
-    protected void deleteRedisKeysByPatterns(Long userId,List<Long> followingsList,List<Long> followersList) {
+    protected void invalidateSubscriptionCaches(Long userId,List<Long> followingsList,List<Long> followersList) {
         if (!followingsList.isEmpty()){
             followingsList.forEach(id->{
-                deleteRedisKeysByPatterns(id);
-                redisCommands.del("user_"+id);
+                invalidateSubscriptionCaches(id);
+                redisCache.evict("user_"+id);
             });
         }
 
         if (!followersList.isEmpty()){
             followersList.forEach(id->{
-                deleteRedisKeysByPatterns(id);
-                redisCommands.del("user_"+id);
+                invalidateSubscriptionCaches(id);
+                redisCache.evict("user_"+id);
             });
         }
 
-        deleteRedisKeysByPatterns(userId);
-
-    }
+        invalidateSubscriptionCaches(userId);
 
-    private <T> T checkCache(String key,Class<T> returnType) throws SerializationException {
-        Long redisResult = redisCommands.exists(key);
-        if (redisResult != null && redisResult > 0) {
-            try {
-                return objectMapper.readValue(redisCommands.get(key), returnType);
-            } catch (JsonProcessingException e) {
-                throw new SerializationException("Error while deserializing from Redis");
-            }
-        }else {
-            return null;
-        }
     }
 
     public SubscribersPageResponse getUserSubscriptions(String userName, int pageNumber, int limit, HttpServletRequest request) throws SerializationException, ImageNotGetedException {
         MyUser user = userRepo.findByName(userName)
                 .orElseThrow(() -> new UsernameNotFoundException("User with this id doesn't exist"));
 
-        String redisKey = "following:" + user.getId() + ":pageNumber:" + pageNumber + ":limit:" + limit;
-        System.out.println("Saved to Redis with key: " + redisKey);
-        SubscribersPageResponse cache = checkCache(redisKey, SubscribersPageResponse.class);
-        if (cache != null) {
-            return cache;
+        String redisKey = "following:" + user.getId() + ":gen:" + redisCache.generation(subscriptionsNamespace(user.getId()))
+                + ":pageNumber:" + pageNumber + ":limit:" + limit;
+        log.debug("Saved to Redis with key: {}", redisKey);
+        Optional<SubscribersPageResponse> cached = redisCache.get(redisKey, SubscribersPageResponse.class);
+        if (cached.isPresent()) {
+            return cached.get();
         }
 
         List<Long> userSubscriptions = user.getFollowing();
@@ -1017,7 +972,7 @@ public class MyUserService {
                 pageOfSubscriptions.getNumberOfElements()
         );
 
-        cacheUsers(result, redisKey);
+        redisCache.put(redisKey, result);
         return result;
     }
 
@@ -1034,11 +989,12 @@ public class MyUserService {
         MyUser user = userRepo.findByName(userName)
                 .orElseThrow(() -> new UsernameNotFoundException("User with this id doesn't exist"));
 
-        String redisKey = "followers:" + user.getId() + ":pageNumber:" + pageNumber + ":limit:" + limit;
-        System.out.println("Saved to Redis with key: " + redisKey);
-        SubscribersPageResponse cache = checkCache(redisKey, SubscribersPageResponse.class);
-        if (cache != null) {
-            return cache;
+        String redisKey = "followers:" + user.getId() + ":gen:" + redisCache.generation(subscriptionsNamespace(user.getId()))
+                + ":pageNumber:" + pageNumber + ":limit:" + limit;
+        log.debug("Saved to Redis with key: {}", redisKey);
+        Optional<SubscribersPageResponse> cached = redisCache.get(redisKey, SubscribersPageResponse.class);
+        if (cached.isPresent()) {
+            return cached.get();
         }
 
         PageRequest pageRequest = PageRequest.of(pageNumber, limit);
@@ -1067,7 +1023,7 @@ public class MyUserService {
                 pageOfSubscribers.getNumberOfElements()
         );
 
-        cacheUsers(result, redisKey);
+        redisCache.put(redisKey, result);
         return result;
     }
 
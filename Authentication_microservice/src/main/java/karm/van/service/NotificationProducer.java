@@ -1,6 +1,8 @@
 package karm.van.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import karm.van.dto.elastic.UserRequest;
+import karm.van.dto.message.UserRenamedEvent;
 import karm.van.dto.request.UserPatchRequest;
 import karm.van.dto.response.RecoveryMessageDto;
 import karm.van.dto.rollBack.RollBackCommand;
@@ -8,6 +10,7 @@ import karm.van.model.MyUser;
 import karm.van.model.MyUserDocument;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -40,26 +43,44 @@ public class NotificationProducer {
     @Value("${rabbitmq.routing-key.recovery.name}")
     private String recoveryRoutingKey;
 
+    @Value("${rabbitmq.routing-key.user-renamed.name}")
+    private String userRenamedRoutingKey;
+
     private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
 
     public void sendRecoveryMessage(RecoveryMessageDto recoveryMessageDto){
-        rabbitTemplate.convertAndSend(exchangeName,recoveryRoutingKey,recoveryMessageDto);
+        send(exchangeName,recoveryRoutingKey,recoveryMessageDto);
+    }
+
+    public void sendUserRenamed(UserRenamedEvent userRenamedEvent){
+        send(exchangeName,userRenamedRoutingKey,userRenamedEvent);
     }
 
     public void sendRollBack(RollBackCommand rollBackCommand){
-        rabbitTemplate.convertAndSend(rollBackExchange,rollBackRoutingKey,rollBackCommand);
+        send(rollBackExchange,rollBackRoutingKey,rollBackCommand);
     }
 
     public void saveInElastic(MyUserDocument userDocument){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeySave,userDocument);
+        send(elasticExchange,elasticRoutingKeySave,userDocument);
     }
 
     public void delInElastic(MyUser user){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeyDel,user);
+        send(elasticExchange,elasticRoutingKeyDel,user);
     }
 
     public void patchInElastic(UserRequest userPatchRequest){
-        rabbitTemplate.convertAndSend(elasticExchange,elasticRoutingKeyPatch,userPatchRequest);
+        send(elasticExchange,elasticRoutingKeyPatch,userPatchRequest);
     }
 
+    // Счетчик rabbit.published по exchange, routing key и результату отправки
+    private void send(String exchange, String routingKey, Object message) {
+        try {
+            rabbitTemplate.convertAndSend(exchange, routingKey, message);
+            meterRegistry.counter("rabbit.published", "exchange", exchange, "routing.key", routingKey, "result", "success").increment();
+        } catch (AmqpException e) {
+            meterRegistry.counter("rabbit.published", "exchange", exchange, "routing.key", routingKey, "result", "failure").increment();
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import karm.van.dto.response.FullUserDtoResponse;
+import karm.van.dto.response.ProfileImageDtoResponse;
+import karm.van.dto.response.UserCardResponse;
+import karm.van.exception.SerializationException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Размер и время кодирования/декодирования профиля пользователя (с 30 карточками) в каждом формате кеша, с LZ4 и без.
+// По умолчанию не запускается, запуск: mvn -pl Authentication_microservice test -Dgroups=benchmark -DexcludedGroups=none -Dtest=CacheCodecBenchmarkTest
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmarkTest {
+    private static final int THRESHOLD_BYTES = 1024;
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    public CacheFormat format;
+
+    @Param({"false", "true"})
+    public boolean compression;
+
+    private CacheSerializer<FullUserDtoResponse> serializer;
+    private FullUserDtoResponse user;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws SerializationException {
+        serializer = serializer(format, compression);
+        user = user(30);
+        encoded = serializer.serialize(user);
+    }
+
+    @Benchmark
+    public byte[] encode() throws SerializationException {
+        return serializer.serialize(user);
+    }
+
+    @Benchmark
+    public FullUserDtoResponse decode() throws SerializationException {
+        return serializer.deserialize(encoded);
+    }
+
+    @Test
+    void compareFormats() throws SerializationException, RunnerException {
+        FullUserDtoResponse user = user(30);
+        for (CacheFormat format : CacheFormat.values()) {
+            for (boolean compression : new boolean[]{false, true}) {
+                CacheSerializer<FullUserDtoResponse> serializer = serializer(format, compression);
+                byte[] value = serializer.serialize(user);
+                assertEquals(user, serializer.deserialize(value));
+                System.out.printf("%-5s lz4=%-5s %6d bytes%n", format, compression, value.length);
+            }
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(CacheCodecBenchmarkTest.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+    private static CacheSerializer<FullUserDtoResponse> serializer(CacheFormat format, boolean compression) {
+        ObjectMapper mapper = new ObjectMapper();
+        JavaType type = mapper.constructType(FullUserDtoResponse.class);
+        return new JacksonCacheSerializer<>(format.mapper(mapper), type, new CacheCompression(compression, THRESHOLD_BYTES));
+    }
+
+    private static FullUserDtoResponse user(int cardsCount) {
+        List<UserCardResponse> cards = new ArrayList<>(cardsCount);
+        for (long id = 1; id <= cardsCount; id++) {
+            cards.add(new UserCardResponse(
+                    id,
+                    "Looking for a backend developer #" + id,
+                    ("We are building a marketplace for small teams and need someone comfortable with Spring Boot, "
+                            + "PostgreSQL and Redis. Remote work, flexible hours, card " + id + ". ").repeat(3)));
+        }
+        return new FullUserDtoResponse(
+                7L,
+                "venik",
+                "example@mail.com",
+                List.of("ROLE_USER"),
+                "John",
+                "Doe",
+                "Backend developer, mostly Java and Spring. Open to side projects and mentoring.",
+                "USA",
+                "Team Leader",
+                "Java, Spring, PostgreSQL, Redis, Docker, Kubernetes",
+                120,
+                50,
+                false,
+                true,
+                new ProfileImageDtoResponse("profile-7.jpg", "user-profile-images"),
+                cards);
+    }
+}
@@ -0,0 +1,20 @@
+package karm.van.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+// Формат значений в кеше. Все варианты - Jackson с настройками и модулями приложения, меняется только кодировка
+public enum CacheFormat {
+    JSON,
+    SMILE,
+    CBOR;
+
+    public ObjectMapper mapper(ObjectMapper applicationMapper) {
+        return switch (this) {
+            case JSON -> applicationMapper;
+            case SMILE -> applicationMapper.copyWith(new SmileFactory());
+            case CBOR -> applicationMapper.copyWith(new CBORFactory());
+        };
+    }
+}
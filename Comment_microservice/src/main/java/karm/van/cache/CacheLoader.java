@@ -0,0 +1,7 @@
+package karm.van.cache;
+
+// Сборка значения для кеша при промахе или фоновом обновлении
+@FunctionalInterface
+public interface CacheLoader<T, E extends Exception> {
+    T load() throws E;
+}
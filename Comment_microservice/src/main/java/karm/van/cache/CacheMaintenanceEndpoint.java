@@ -0,0 +1,28 @@
+package karm.van.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Ручная чистка кеша по шаблону (DELETE /actuator/cache/{pattern}, например comments:card:15:*), если данные
+// поменяли в обход сервиса. Запросы сами так ничего не удаляют - у них поколения. По умолчанию не открыт,
+// включается через management.endpoints.web.exposure.include только во внутренней сети
+@Component
+@Endpoint(id = "cache")
+@RequiredArgsConstructor
+@Slf4j
+public class CacheMaintenanceEndpoint {
+    private final RedisCache redisCache;
+
+    @DeleteOperation
+    public Map<String, Object> evict(@Selector String pattern) {
+        long deleted = redisCache.evictMatching(pattern);
+        log.info("Cache maintenance: {} keys matching {} were deleted", deleted, pattern);
+        return Map.of("pattern", pattern, "deleted", deleted);
+    }
+}
@@ -0,0 +1,10 @@
+package karm.van.cache;
+
+import karm.van.exception.other.SerializationException;
+
+// Как значение определенного типа хранится в Redis
+public interface CacheSerializer<T> {
+    byte[] serialize(T value) throws SerializationException;
+
+    T deserialize(byte[] value) throws SerializationException;
+}
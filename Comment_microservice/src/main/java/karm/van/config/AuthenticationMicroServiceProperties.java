@@ -18,6 +18,7 @@ public class AuthenticationMicroServiceProperties {
     public static class Endpoints{
         private String validateToken;
         private String user;
+        private String usersBatch;
         private String linkCommentAndUser;
         private String unlinkCommentAndUser;
     }
@@ -5,12 +5,16 @@ import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-@EnableConfigurationProperties(AuthenticationMicroServiceProperties.class)
+@EnableConfigurationProperties({AuthenticationMicroServiceProperties.class, JwtProperties.class, CacheProperties.class})
 @Configuration
 public class CommentConfiguration {
     @Value("${redis.host}")
@@ -40,7 +44,18 @@ public class CommentConfiguration {
     }
 
     @Bean
-    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection) {
-        return connection.sync();
+    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection, MeterRegistry meterRegistry) {
+        return InstrumentedRedisCommands.wrap(connection.sync(), meterRegistry);
+    }
+
+    // Значения кеша хранятся в бинарном виде (Smile/CBOR + LZ4), ключи остаются строками
+    @Bean(destroyMethod = "close")
+    public StatefulRedisConnection<String, byte[]> binaryRedisConnection(RedisClient redisClient) {
+        return redisClient.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE));
+    }
+
+    @Bean
+    public RedisCommands<String, byte[]> binaryRedisCommands(StatefulRedisConnection<String, byte[]> binaryRedisConnection, MeterRegistry meterRegistry) {
+        return InstrumentedRedisCommands.wrap(binaryRedisConnection.sync(), meterRegistry);
     }
 }
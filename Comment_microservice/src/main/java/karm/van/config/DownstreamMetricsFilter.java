@@ -0,0 +1,50 @@
+package karm.van.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Время каждого запроса к другому сервису (inter.service.requests) с тегами сервиса, метода, endpoint и результата.
+// Числовые части пути заменяются на {id}, чтобы у одного endpoint был один набор метрик
+@RequiredArgsConstructor
+public class DownstreamMetricsFilter implements ExchangeFilterFunction {
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    // host:port -> имя сервиса
+    private final Map<String, String> downstreams;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        String downstream = downstreams.getOrDefault(request.url().getHost() + ":" + request.url().getPort(), "unknown");
+        String endpoint = ID_SEGMENT.matcher(request.url().getPath()).replaceAll("/{id}");
+        String method = request.method().name();
+
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return next.exchange(request)
+                    .doOnSuccess(response -> sample.stop(timer(downstream, method, endpoint,
+                            response == null ? "NONE" : String.valueOf(response.statusCode().value()))))
+                    .doOnError(e -> sample.stop(timer(downstream, method, endpoint, e.getClass().getSimpleName())))
+                    .doOnCancel(() -> sample.stop(timer(downstream, method, endpoint, "CANCELLED")));
+        });
+    }
+
+    private Timer timer(String downstream, String method, String endpoint, String outcome) {
+        return Timer.builder("inter.service.requests")
+                .tag("downstream", downstream)
+                .tag("method", method)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
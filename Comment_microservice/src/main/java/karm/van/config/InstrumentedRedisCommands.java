@@ -0,0 +1,138 @@
+package karm.van.config;
+
+import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Set;
+
+// Обертка над RedisCommands: время каждой команды (redis.commands) и попадания/промахи кеша (cache.gets)
+// с тегом семейства ключа - card, pageNumber, comments, user_ и т.д.
+public final class InstrumentedRedisCommands implements InvocationHandler {
+    private static final Set<String> LOOKUP_COMMANDS = Set.of("exists", "get", "smembers", "lrange", "mget");
+
+    private final RedisCommands<String, ?> delegate;
+    private final MeterRegistry meterRegistry;
+    // Ключ последнего удачного exists в этом потоке: get сразу после него - это то же обращение к кешу, а не второе
+    private final ThreadLocal<String> lastExistsKey = new ThreadLocal<>();
+
+    private InstrumentedRedisCommands(RedisCommands<String, ?> delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> RedisCommands<String, V> wrap(RedisCommands<String, V> delegate, MeterRegistry meterRegistry) {
+        return (RedisCommands<String, V>) Proxy.newProxyInstance(
+                RedisCommands.class.getClassLoader(),
+                new Class<?>[]{RedisCommands.class},
+                new InstrumentedRedisCommands(delegate, meterRegistry));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(delegate, args);
+        }
+
+        String command = method.getName();
+        String key = firstKey(command, args);
+        String family = keyFamily(key);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Object result;
+        try {
+            result = method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            sample.stop(timer(command, family, e.getCause().getClass().getSimpleName()));
+            throw e.getCause();
+        }
+        sample.stop(timer(command, family, "SUCCESS"));
+
+        if (key != null && LOOKUP_COMMANDS.contains(command)) {
+            recordLookup(command, key, family, result);
+        }
+
+        return result;
+    }
+
+    private void recordLookup(String command, String key, String family, Object result) {
+        if (command.equals("get") && key.equals(lastExistsKey.get())) {
+            lastExistsKey.remove();
+            return;
+        }
+
+        boolean hit = switch (command) {
+            case "exists" -> result instanceof Long count && count > 0;
+            case "get" -> result != null;
+            default -> result instanceof Collection<?> values && !values.isEmpty();
+        };
+
+        if (command.equals("exists") && hit) {
+            lastExistsKey.set(key);
+        }
+
+        meterRegistry.counter("cache.gets", "cache", family, "result", hit ? "hit" : "miss").increment();
+    }
+
+    private Timer timer(String command, String family, String outcome) {
+        return Timer.builder("redis.commands")
+                .tag("command", command)
+                .tag("family", family)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String firstKey(String command, Object[] args) {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+        // eval(script, type, keys, values...) - первый аргумент скрипт, ключи идут третьими
+        Object first = command.startsWith("eval") && args.length > 2 ? args[2] : args[0];
+        if (first instanceof String key) {
+            return key;
+        }
+        if (first instanceof String[] keys && keys.length > 0) {
+            return keys[0];
+        }
+        return null;
+    }
+
+    // Семейство - начало ключа до первой цифры, ':' или '*': card15 -> card, pageNumber:0:limit:10 -> pageNumber,
+    // user_3 -> user_, favorite-cards:7 -> favorite-cards. Префикс версии (v2:card15) не учитывается
+    static String keyFamily(String key) {
+        if (key == null) {
+            return "none";
+        }
+
+        int start = versionPrefixLength(key);
+        int end = start;
+        while (end < key.length()) {
+            char c = key.charAt(end);
+            if (c == ':' || c == '*' || Character.isDigit(c)) {
+                break;
+            }
+            end++;
+        }
+
+        return end == start ? "other" : key.substring(start, end);
+    }
+
+    // Длина префикса вида v<цифры>: или 0, если его нет
+    private static int versionPrefixLength(String key) {
+        if (key.length() < 3 || key.charAt(0) != 'v' || !Character.isDigit(key.charAt(1))) {
+            return 0;
+        }
+        int i = 1;
+        while (i < key.length() && Character.isDigit(key.charAt(i))) {
+            i++;
+        }
+        return i < key.length() && key.charAt(i) == ':' ? i + 1 : 0;
+    }
+}
@@ -0,0 +1,95 @@
+package karm.van.config;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class WebClientConfiguration {
+
+    // Отдельный пул соединений к Authentication сервису, лимиты задаются в microservices.http-client
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider connectionProvider(HttpClientProperties properties,
+                                                 AuthenticationMicroServiceProperties authenticationProperties) {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("inter-service");
+        applyPool(builder, properties.getPool());
+
+        addDownstream(builder, properties, "authentication", authenticationProperties.getHost(), authenticationProperties.getPort());
+
+        return builder.build();
+    }
+
+    @Bean
+    public DownstreamResilienceFilter downstreamResilienceFilter(AuthenticationMicroServiceProperties authenticationProperties,
+                                                                 CircuitBreakerRegistry circuitBreakerRegistry,
+                                                                 BulkheadRegistry bulkheadRegistry,
+                                                                 TimeLimiterRegistry timeLimiterRegistry) {
+        return new DownstreamResilienceFilter(downstreams(authenticationProperties),
+                circuitBreakerRegistry, bulkheadRegistry, timeLimiterRegistry);
+    }
+
+    @Bean
+    public DownstreamMetricsFilter downstreamMetricsFilter(AuthenticationMicroServiceProperties authenticationProperties,
+                                                           MeterRegistry meterRegistry) {
+        return new DownstreamMetricsFilter(downstreams(authenticationProperties), meterRegistry);
+    }
+
+    @Bean
+    public WebClient webClient(ConnectionProvider connectionProvider, HttpClientProperties properties,
+                               DownstreamMetricsFilter downstreamMetricsFilter,
+                               DownstreamResilienceFilter downstreamResilienceFilter) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, properties.getConnectTimeoutMs())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(properties.getResponseTimeoutMs()))
+                .compress(properties.isCompression());
+
+        if (properties.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(downstreamMetricsFilter)
+                .filter(downstreamResilienceFilter)
+                .build();
+    }
+
+    // host:port -> имя сервиса, по нему фильтры понимают, к какому сервису идет запрос
+    private Map<String, String> downstreams(AuthenticationMicroServiceProperties authenticationProperties) {
+        Map<String, String> downstreams = new HashMap<>();
+        downstreams.put(authenticationProperties.getHost() + ":" + authenticationProperties.getPort(), "authentication");
+        return downstreams;
+    }
+
+    private void addDownstream(ConnectionProvider.Builder builder, HttpClientProperties properties,
+                               String name, String host, String port) {
+        HttpClientProperties.Pool pool = properties.getPools().getOrDefault(name, properties.getPool());
+        builder.forRemoteHost(InetSocketAddress.createUnresolved(host, Integer.parseInt(port)),
+                spec -> applyPool(spec, pool));
+    }
+
+    private void applyPool(ConnectionProvider.ConnectionPoolSpec<?> spec, HttpClientProperties.Pool pool) {
+        spec.maxConnections(pool.getMaxConnections())
+                .pendingAcquireTimeout(Duration.ofMillis(pool.getPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofMillis(pool.getMaxIdleTimeMs()))
+                .maxLifeTime(Duration.ofMillis(pool.getMaxLifeTimeMs()))
+                .evictInBackground(Duration.ofMillis(pool.getMaxIdleTimeMs()));
+    }
+}
@@ -170,10 +170,13 @@ public class CommentController {
             @Parameter(description = "Number of comments per page", example = "10")
             @RequestParam(required = false, defaultValue = "10") int limit,
 
+            @Parameter(description = "Whether to return totalPages and totalElements")
+            @RequestParam(required = false, defaultValue = "true") boolean withTotal,
+
             @RequestHeader("Authorization") String authorization
     ) {
         try {
-            return ResponseEntity.ok(commentService.getComments(cardId,limit,page,authorization));
+            return ResponseEntity.ok(commentService.getComments(cardId,limit,page,withTotal,authorization));
         } catch (TokenNotExistException e){
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
         } catch (CardNotFoundException e) {
@@ -212,9 +215,12 @@ public class CommentController {
             @Parameter(description = "The number of replies per page (default is 10)")
             @RequestParam(required = false, defaultValue = "10") int limit,
 
+            @Parameter(description = "Whether to return totalPages and totalElements")
+            @RequestParam(required = false, defaultValue = "true") boolean withTotal,
+
             @RequestHeader("Authorization") String authorization) {
         try {
-            return ResponseEntity.ok(commentService.getReplyComments(commentId,limit,page,authorization));
+            return ResponseEntity.ok(commentService.getReplyComments(commentId,limit,page,withTotal,authorization));
         } catch (TokenNotExistException e){
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
         } catch (CommentNotFoundException e) {
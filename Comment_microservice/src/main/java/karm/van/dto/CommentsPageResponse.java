@@ -13,11 +13,11 @@ public record CommentsPageResponse(
         @Schema(description = "Is this the last page?")
         boolean last,
 
-        @Schema(description = "Total number of pages")
-        int totalPages,
+        @Schema(description = "Total number of pages, null if the total was not requested")
+        Integer totalPages,
 
-        @Schema(description = "Total number of comment elements")
-        long totalElements,
+        @Schema(description = "Total number of comment elements, null if the total was not requested")
+        Long totalElements,
 
         @Schema(description = "Is this the first page?")
         boolean first,
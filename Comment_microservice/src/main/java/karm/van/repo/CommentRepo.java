@@ -1,8 +1,8 @@
 package karm.van.repo;
 
 import karm.van.model.CommentModel;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -15,12 +15,17 @@ public interface CommentRepo extends JpaRepository<CommentModel,Long> {
 
     List<CommentModel> getAllByUserId(Long userId);
 
-    Page<CommentModel> getCommentModelByCardIdAndParentCommentIsNull(Long id, Pageable pageable);
+    // Slice: страницы комментариев читаются без count(*), количество считает CommentService
+    Slice<CommentModel> getCommentModelByCardIdAndParentCommentIsNull(Long id, Pageable pageable);
+
+    long countByCardIdAndParentCommentIsNull(Long cardId);
 
     @Query("SELECT c.parentComment.id FROM CommentModel c WHERE c.id = :commentId")
     Optional<Long> getParentCommentId(@Param("commentId") Long commentId);
 
-    Page<CommentModel> getCommentModelsByParentComment_Id(Long parentCommentId, Pageable pageable);
+    Slice<CommentModel> getCommentModelsByParentComment_Id(Long parentCommentId, Pageable pageable);
+
+    long countByParentComment_Id(Long parentCommentId);
 
     void deleteAllByCardId(Long id);
 
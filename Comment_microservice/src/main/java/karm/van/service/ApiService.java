@@ -1,40 +1,57 @@
 package karm.van.service;
 
-import jakarta.annotation.PostConstruct;
 import karm.van.dto.UserDtoRequest;
+import karm.van.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @Component
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
-
-    @PostConstruct
-    public void init(){
-        webClient = WebClient.create();
-    }
+    private final WebClient webClient;
+    // Базовые адреса (prefix + host + port + endpoint) разбираются один раз, дальше к ним только дописываются id
+    private final Map<String, String> urlTemplates = new ConcurrentHashMap<>();
+    // Одинаковые одновременные запросы на чтение (проверка одного токена, один и тот же пользователь) уходят в сеть один раз.
+    // Запросы идут с токеном пользователя, поэтому токен входит в ключ: чужой отказ авторизации или пустой ответ не делится
+    private final SingleFlight inFlight = new SingleFlight();
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(prefix + host + ":" + port + endpoint);
+        StringBuilder url = new StringBuilder(buildUrl(prefix, host, port, endpoint));
 
-        if (ids.length > 0) {
-            uriBuilder.pathSegment(ids[0].toString());
-            for (int i = 1; i < ids.length; i++) {
-                uriBuilder.pathSegment(ids[i].toString());
-            }
+        for (Long id : ids) {
+            appendPathSegment(url, id.toString());
         }
 
-        return uriBuilder.toUriString();
+        return url.toString();
+    }
+
+    public String buildUrl(String prefix, String host, String port, String endpoint) {
+        return urlTemplates.computeIfAbsent(prefix + host + ":" + port + endpoint,
+                url -> UriComponentsBuilder.fromHttpUrl(url).toUriString());
+    }
+
+    private void appendPathSegment(StringBuilder url, String segment) {
+        if (url.charAt(url.length() - 1) != '/') {
+            url.append('/');
+        }
+        url.append(segment);
     }
 
     private <T> T sendGetResponse(String uri, String token, Class<T> responseType, String apiKey){
@@ -59,6 +76,25 @@ public class ApiService {
         }
     }
 
+    private <T> T sendGetResponse(String uri, String token, ParameterizedTypeReference<T> responseType, String apiKey){
+        return webClient
+                .get()
+                .uri(uri)
+                .headers(httpHeaders -> {
+                    httpHeaders.set("x-api-key",apiKey);
+                    httpHeaders.setBearerAuth(token);
+                })
+                .retrieve()
+                .bodyToMono(responseType)
+                .block();
+    }
+
+    private String getIds(List<?> ids){
+        return ids.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+    }
+
     private HttpStatusCode sendPostRequest(String url, String token, String apiKey) {
         return Objects.requireNonNull(
                 webClient
@@ -91,7 +127,7 @@ public class ApiService {
     }
 
     public Boolean validateToken(String token, String url) {
-        Map<?, ?> responseMap = sendGetResponse(url, token, Map.class,null);
+        Map<?, ?> responseMap = inFlight.execute("GET " + url + " " + token, () -> sendGetResponse(url, token, Map.class,null));
         return responseMap != null && responseMap.containsKey("valid") && (Boolean) responseMap.get("valid");
     }
 
@@ -100,14 +136,39 @@ public class ApiService {
     }
 
     public UserDtoRequest getUserByToken(String url, String token, String apiKey) {
-        return fetchUserData(url, token, apiKey);
+        return inFlight.execute("GET " + url + " " + token, () -> fetchUserData(url, token, apiKey));
     }
 
     public UserDtoRequest getUserById(String url, String token, Long userId, String apiKey) {
         String uri = UriComponentsBuilder.fromHttpUrl(url)
                 .queryParam("userId", userId)
                 .toUriString();
-        return fetchUserData(uri, token, apiKey);
+        return inFlight.execute("GET " + uri + " " + token, () -> fetchUserData(uri, token, apiKey));
+    }
+
+    // Один запрос за всеми авторами страницы. Повторяющиеся id отправляются один раз
+    public Map<Long, UserDtoRequest> getUsersByIds(String url, String token, Collection<Long> userIds, String apiKey) {
+        List<Long> ids = userIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+
+        String uri = UriComponentsBuilder.fromHttpUrl(url)
+                .queryParam("ids", getIds(ids))
+                .toUriString();
+
+        List<UserDtoRequest> users = inFlight.execute("GET " + uri + " " + token,
+                () -> sendGetResponse(uri, token, new ParameterizedTypeReference<List<UserDtoRequest>>() {}, apiKey));
+
+        if (users == null) {
+            return Map.of();
+        }
+
+        return users.stream().collect(Collectors.toMap(UserDtoRequest::id, Function.identity(), (first, second) -> first));
     }
 
     public HttpStatusCode addCommentToUser(String url,String token,String apiKey) throws NullPointerException{
@@ -117,4 +178,17 @@ public class ApiService {
     public HttpStatusCode requestToUnlinkCommentFromUser(String url, String token, String apiKey) {
         return sendDeleteRequest(url,token,apiKey);
     }
+
+    public Mono<HttpStatusCode> requestToUnlinkCommentFromUserAsync(String url, String token, String apiKey) {
+        return webClient
+                .delete()
+                .uri(url)
+                .headers(headers -> {
+                    headers.setBearerAuth(token);
+                    headers.set("x-api-key", apiKey);
+                })
+                .retrieve()
+                .toBodilessEntity()
+                .map(ResponseEntity::getStatusCode);
+    }
 }
@@ -1,8 +1,6 @@
 package karm.van.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.cache.RedisCache;
 import karm.van.config.AuthenticationMicroServiceProperties;
 import karm.van.dto.*;
 import karm.van.exception.card.CardNotFoundException;
@@ -18,21 +16,27 @@ import karm.van.model.CardModel;
 import karm.van.model.CommentModel;
 import karm.van.repo.CardRepo;
 import karm.van.repo.CommentRepo;
+import karm.van.utils.AfterCommit;
 import karm.van.utils.CommentMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -40,22 +44,19 @@ import java.util.Optional;
 public class CommentService {
     private final CommentRepo commentRepo;
     private final CardRepo cardRepo;
-    private final ObjectMapper objectMapper;
     private final AuthenticationMicroServiceProperties authProperties;
     private final ApiService apiService;
+    private final JwtService jwtService;
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
-    private final RedisCommands<String,String> redisCommands;
+
+    @Value("${microservices.http-client.fan-out-concurrency:8}")
+    private int fanOutConcurrency;
+    private final RedisCache redisCache;
 
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authProperties.getPrefix(),
-                        authProperties.getHost(),
-                        authProperties.getPort(),
-                        authProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtService.validateAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
@@ -64,34 +65,13 @@ public class CommentService {
         return !key.equals(apiKey);
     }
 
-    private UserDtoRequest requestToGetUserByToken(String token) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserByToken(apiService.buildUrl(
-                authProperties.getPrefix(),
-                authProperties.getHost(),
-                authProperties.getPort(),
-                authProperties.getEndpoints().getUser()
-        ),token,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
-
-        return user;
-    }
-
-    private UserDtoRequest requestToGetUserById(String token, Long userId) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserById(apiService.buildUrl(
+    private Map<Long, UserDtoRequest> requestToGetUsersByIds(String token, Collection<Long> userIds) {
+        return apiService.getUsersByIds(apiService.buildUrl(
                 authProperties.getPrefix(),
                 authProperties.getHost(),
                 authProperties.getPort(),
-                authProperties.getEndpoints().getUser()
-        ), token,userId,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
-
-        return user;
+                authProperties.getEndpoints().getUsersBatch()
+        ), token, userIds, apiKey);
     }
 
     private void requestToUnlinkCommentFromUser(String token, Long commentId, Long authorId) throws CommentNotUnlinkException {
@@ -109,6 +89,25 @@ public class CommentService {
         }
     }
 
+    // Запросы идут параллельно, но не больше fanOutConcurrency одновременно и без блокировки потоков
+    private void requestToUnlinkCommentsFromUsers(String token, List<CommentModel> comments) throws CommentNotUnlinkException {
+        List<HttpStatusCode> statuses = Flux.fromIterable(comments)
+                .flatMap(comment -> apiService.requestToUnlinkCommentFromUserAsync(apiService.buildUrl(
+                        authProperties.getPrefix(),
+                        authProperties.getHost(),
+                        authProperties.getPort(),
+                        authProperties.getEndpoints().getUnlinkCommentAndUser(),
+                        comment.getId(),
+                        comment.getUserId()
+                ),token,apiKey), fanOutConcurrency)
+                .collectList()
+                .block();
+
+        if (statuses == null || statuses.stream().anyMatch(status -> status != HttpStatus.OK)){
+            throw new CommentNotUnlinkException("An error occurred while trying to delete the card");
+        }
+    }
+
     private void requestToLinkCommentAndUser(Long commentId, String token) throws CommentNotSavedException {
         String url = apiService.buildUrl(
                 authProperties.getPrefix(),
@@ -143,7 +142,7 @@ public class CommentService {
             CardModel cardModel = cardRepo.getCardModelById(cardId)
                     .orElseThrow(()->new CardNotFoundException("Card with this id doesn't exist"));
 
-            UserDtoRequest user = requestToGetUserByToken(token);
+            UserPrincipal user = jwtService.getPrincipal(token);
 
             CommentModel commentModel = CommentModel.builder()
                     .text(commentDto.text())
@@ -157,6 +156,7 @@ public class CommentService {
             requestToLinkCommentAndUser(commentModel.getId(),token);
 
             invalidateCardCommentsCache(cardId);
+            AfterCommit.run(() -> redisCache.adjustCount(cardCommentsNamespace(cardId), 1));
         } catch (InvalidDataException | CardNotFoundException e){
             throw e;
         } catch (Exception e){
@@ -165,49 +165,62 @@ public class CommentService {
         }
     }
 
-    private CommentsPageResponse getCachedComments(Page<CommentModel> comments,String token,String keyForCache){
+    private CommentsPageResponse getCachedComments(Slice<CommentModel> comments,String token,String keyForCache) throws SerializationException {
 
         if (comments.isEmpty()){
-            return new CommentsPageResponse(List.of(),true,0,0,true,0);
+            return new CommentsPageResponse(List.of(),true,null,null,true,0);
         }
 
         List<CommentDtoResponse> listOfComments = new ArrayList<>();
 
-        comments.stream().parallel()
-                .forEach(comment->{
-                    CommentAuthorDto authorDto;
-                    try{
-                        authorDto = new CommentAuthorDto(requestToGetUserById(token,comment.getUserId()).name());
-                    }catch (UsernameNotFoundException e){
-                        throw new RuntimeException(e.getMessage());
-                    }
-                    CommentDtoResponse commentDtoResponse = new CommentDtoResponse(
-                            comment.getId(),
-                            comment.getText(),
-                            comment.getCreatedAt(),
-                            authorDto,
-                            comment.getReplyComments().size());
-                    try {
-                        redisCommands.rpush(keyForCache, objectMapper.writeValueAsString(commentDtoResponse));
-                        listOfComments.add(commentDtoResponse);
-                    } catch (JsonProcessingException e) {
-                        throw new RuntimeException(new SerializationException("An error occurred during serialization"));
-                    }
-                });
-
-        redisCommands.expire(keyForCache, 60); // Устанавливаем время жизни равное минуте
-
-        return new CommentsPageResponse(listOfComments,comments.isLast(),comments.getTotalPages(),comments.getTotalElements(),comments.isFirst(),comments.getNumberOfElements());
+        Map<Long, UserDtoRequest> authors;
+        boolean cacheable = true;
+        try {
+            authors = requestToGetUsersByIds(token, comments.stream().map(CommentModel::getUserId).toList());
+        } catch (Exception e) {
+            // Authentication сервис недоступен - отдаем комментарии без имен авторов и не кешируем такую страницу
+            log.warn("Comment authors were not received: " + e.getMessage());
+            authors = Map.of();
+            cacheable = false;
+        }
+
+        for (CommentModel comment : comments) {
+            UserDtoRequest author = authors.get(comment.getUserId());
+            CommentAuthorDto authorDto = new CommentAuthorDto(author != null ? author.name() : null);
+            CommentDtoResponse commentDtoResponse = new CommentDtoResponse(
+                    comment.getId(),
+                    comment.getText(),
+                    comment.getCreatedAt(),
+                    authorDto,
+                    comment.getReplyComments().size());
+            listOfComments.add(commentDtoResponse);
+        }
+
+        // Страница кешируется без общего количества, его добавляет withTotal из счетчика
+        CommentsPageResponse response = new CommentsPageResponse(listOfComments,comments.isLast(),null,null,comments.isFirst(),comments.getNumberOfElements());
+
+        if (cacheable) {
+            redisCache.put(keyForCache, response);
+        }
+
+        return response;
     }
 
-    public CommentsPageResponse getComments(Long cardId,int limit,int page, String authorization) throws CardNotFoundException, SerializationException, TokenNotExistException {
+    public CommentsPageResponse getComments(Long cardId,int limit,int page,boolean withTotal, String authorization) throws CardNotFoundException, SerializationException, TokenNotExistException {
         String token = authorization.substring(7);
         checkToken(token);
         try {
+            String commentsKeyForCache = cardCommentsNamespace(cardId) + ":gen:" + redisCache.generation(cardCommentsNamespace(cardId))
+                    + ":page:" + page + ":limit:" + limit + ":slice";
+            Optional<CommentsPageResponse> cached = redisCache.get(commentsKeyForCache, CommentsPageResponse.class);
+            if (cached.isPresent()){
+                return withTotal ? withTotal(cached.get(), countCardComments(cardId), limit) : cached.get();
+            }
+
             if (cardRepo.existsById(cardId)){
-                String commentsKeyForCache = "comments:card:" + cardId;
-                Page<CommentModel> comments = commentRepo.getCommentModelByCardIdAndParentCommentIsNull(cardId, PageRequest.of(page,limit));
-                return cacheComments(comments,commentsKeyForCache,token);
+                Slice<CommentModel> comments = commentRepo.getCommentModelByCardIdAndParentCommentIsNull(cardId, PageRequest.of(page,limit));
+                CommentsPageResponse response = getCachedComments(comments,token,commentsKeyForCache);
+                return withTotal ? withTotal(response, countCardComments(cardId), limit) : response;
             }else {
                 throw new CardNotFoundException("Card with this id doesn't exist");
             }
@@ -219,18 +232,17 @@ public class CommentService {
         }
     }
 
-    private CommentsPageResponse cacheComments(Page<CommentModel> comments,String commentsKeyForCache, String token) throws SerializationException {
-        Long cacheResult = redisCommands.exists(commentsKeyForCache);
+    private long countCardComments(Long cardId) {
+        return redisCache.count(cardCommentsNamespace(cardId), () -> commentRepo.countByCardIdAndParentCommentIsNull(cardId));
+    }
 
-        if (cacheResult!=null && cacheResult>0){
-            try {
-                return objectMapper.readValue(commentsKeyForCache,CommentsPageResponse.class);
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(new SerializationException("An error occurred during deserialization"));
-            }
-        }else {
-            return getCachedComments(comments,token,commentsKeyForCache);
-        }
+    private long countReplyComments(Long commentId) {
+        return redisCache.count(replyCommentsNamespace(commentId), () -> commentRepo.countByParentComment_Id(commentId));
+    }
+
+    private static CommentsPageResponse withTotal(CommentsPageResponse page, long total, int limit) {
+        return new CommentsPageResponse(page.comments(), page.last(), (int) Math.ceil((double) total / limit), total,
+                page.first(), page.numberOfElements());
     }
 
     @Transactional
@@ -243,14 +255,9 @@ public class CommentService {
             comments.forEach(comment->invalidateReplyCommentsCacheForChainIterative(comment.getId()));
 
             if (!comments.isEmpty()){
-                comments.parallelStream().forEach(comment->{
-                    try {
-                        requestToUnlinkCommentFromUser(token,comment.getId(),comment.getUserId());
-                    } catch (CommentNotUnlinkException e){
-                        throw new RuntimeException(e.getMessage());
-                    }
-                });
+                requestToUnlinkCommentsFromUsers(token,comments);
                 commentRepo.deleteAllByCardId(cardId);
+                evictCommentCounts(comments);
             }
             return comments;
         } catch (Exception e){
@@ -262,9 +269,9 @@ public class CommentService {
 
     private void checkPermissions(CommentModel commentModel, String token) throws UsernameNotFoundException, NotEnoughPermissionsException {
         Long commentAuthorId = commentModel.getUserId();
-        UserDtoRequest user = requestToGetUserByToken(token);
+        UserPrincipal user = jwtService.getPrincipal(token);
 
-        if (!commentAuthorId.equals(user.id()) && user.role().stream().noneMatch(role->role.equals("ROLE_ADMIN"))){
+        if (!commentAuthorId.equals(user.id()) && !user.hasRole("ROLE_ADMIN")){
             throw new NotEnoughPermissionsException("You don't have permission to do this");
         }
     }
@@ -309,6 +316,15 @@ public class CommentService {
         commentRepo.deleteById(commentId);
         invalidateCardCommentsCache(commentModel.getCardId());
         invalidateReplyCommentsCacheForChainIterative(commentId);
+
+        CommentModel parentComment = commentModel.getParentComment();
+        String count = parentComment == null
+                ? cardCommentsNamespace(commentModel.getCardId())
+                : replyCommentsNamespace(parentComment.getId());
+        AfterCommit.run(() -> {
+            redisCache.adjustCount(count, -1);
+            redisCache.evictCount(replyCommentsNamespace(commentId));
+        });
     }
 
     @Transactional
@@ -325,7 +341,7 @@ public class CommentService {
         CommentModel parentComment = commentRepo.getCommentModelById(commentId)
                 .orElseThrow(()->new CommentNotFoundException("Comment with this id doesn't exist"));
 
-        UserDtoRequest user = requestToGetUserByToken(token);
+        UserPrincipal user = jwtService.getPrincipal(token);
 
         CommentModel commentModel = CommentModel.builder()
                 .text(commentDto.text())
@@ -340,26 +356,33 @@ public class CommentService {
         requestToLinkCommentAndUser(commentModel.getId(),token);
         invalidateCardCommentsCache(commentModel.getCardId());
         invalidateReplyCommentsCacheForChainIterative(commentId);
+        AfterCommit.run(() -> redisCache.adjustCount(replyCommentsNamespace(commentId), 1));
     }
 
-    public CommentsPageResponse getReplyComments(Long commentId, int limit, int page, String authorization) throws TokenNotExistException, SerializationException, CommentNotFoundException {
+    public CommentsPageResponse getReplyComments(Long commentId, int limit, int page, boolean withTotal, String authorization) throws TokenNotExistException, SerializationException, CommentNotFoundException {
         String token = authorization.substring(7);
         checkToken(token);
+        String keyForCache = replyCommentsNamespace(commentId) + ":gen:" + redisCache.generation(replyCommentsNamespace(commentId))
+                + ":page:" + page + ":limit:" + limit + ":slice";
+        Optional<CommentsPageResponse> cached = redisCache.get(keyForCache, CommentsPageResponse.class);
+        if (cached.isPresent()){
+            return withTotal ? withTotal(cached.get(), countReplyComments(commentId), limit) : cached.get();
+        }
+
         if (commentRepo.existsById(commentId)){
-            String keyForCache = "comments:reply:" + commentId;
-            Page<CommentModel> comments = commentRepo.getCommentModelsByParentComment_Id(commentId, PageRequest.of(page,limit));
-            return cacheComments(comments,keyForCache,token);
+            Slice<CommentModel> comments = commentRepo.getCommentModelsByParentComment_Id(commentId, PageRequest.of(page,limit));
+            CommentsPageResponse response = getCachedComments(comments,token,keyForCache);
+            return withTotal ? withTotal(response, countReplyComments(commentId), limit) : response;
         }else {
             throw new CommentNotFoundException("Comment with this id doesn't exist");
         }
     }
 
+    // Страницы комментариев строятся с поколением карточки или родительского комментария,
+    // сброс всех страниц - один INCR, старые истекают сами. INCR идет после коммита: иначе промах между ним
+    // и коммитом закеширует старые строки уже под новым поколением
     private void invalidateCardCommentsCache(Long cardId) {
-        String pattern = "comments:card:" + cardId + "*";
-        List<String> keys = redisCommands.keys(pattern);
-        if (!keys.isEmpty()) {
-            redisCommands.del(keys.toArray(new String[0]));
-        }
+        AfterCommit.run(() -> redisCache.nextGeneration(cardCommentsNamespace(cardId)));
     }
 
     private void invalidateReplyCommentsCacheForChainIterative(Long commentId) {
@@ -372,12 +395,31 @@ public class CommentService {
     }
 
     private void invalidateReplyCommentsCache(Long commentId) {
-        String pattern = "comments:reply:" + commentId + "*";
-        List<String> keys = redisCommands.keys(pattern);
-        log.debug("Invalidating keys for pattern {}: {}", pattern, keys);
-        if (!keys.isEmpty()) {
-            redisCommands.del(keys.toArray(new String[0]));
+        log.debug("Invalidating reply pages of comment {}", commentId);
+        AfterCommit.run(() -> redisCache.nextGeneration(replyCommentsNamespace(commentId)));
+    }
+
+    // Массовое удаление или восстановление: счетчики затронутых карточек и веток пересчитаются при следующем чтении.
+    // Ключи собираются в транзакции (родитель читается из БД), удаляются после коммита
+    private void evictCommentCounts(Collection<CommentModel> comments) {
+        Set<String> counts = new HashSet<>();
+        for (CommentModel comment : comments) {
+            CommentModel parentComment = comment.getParentComment();
+            counts.add(parentComment == null
+                    ? cardCommentsNamespace(comment.getCardId())
+                    : replyCommentsNamespace(parentComment.getId()));
+            counts.add(replyCommentsNamespace(comment.getId()));
         }
+        String[] names = counts.toArray(new String[0]);
+        AfterCommit.run(() -> redisCache.evictCount(names));
+    }
+
+    private static String cardCommentsNamespace(Long cardId) {
+        return "comments:card:" + cardId;
+    }
+
+    private static String replyCommentsNamespace(Long commentId) {
+        return "comments:reply:" + commentId;
     }
 
     @Transactional
@@ -387,6 +429,7 @@ public class CommentService {
         try {
             List<CommentModel> comments = commentRepo.getAllByUserId(userId);
             commentRepo.deleteAll(comments);
+            evictCommentCounts(comments);
 
             return comments;
         } catch (Exception e){
@@ -400,6 +443,7 @@ public class CommentService {
         try {
             List<CommentModel> comments = CommentMapper.toEntityList(deletedComments);
             commentRepo.saveAll(comments);
+            evictCommentCounts(comments);
         }catch (Exception e){
             log.debug("An unknown error occurred while saving the comments: "+e.getMessage()+" - "+e.getClass());
             throw new RuntimeException("Unexpected error occurred", e);
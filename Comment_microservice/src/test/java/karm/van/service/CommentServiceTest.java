@@ -0,0 +1,90 @@
+package karm.van.service;
+
+import karm.van.cache.RedisCache;
+import karm.van.config.AuthenticationMicroServiceProperties;
+import karm.van.dto.UserPrincipal;
+import karm.van.model.CommentModel;
+import karm.van.repo.CardRepo;
+import karm.van.repo.CommentRepo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class CommentServiceTest {
+    private static final String AUTHORIZATION = "Bearer token";
+
+    private CommentRepo commentRepo;
+    private RedisCache redisCache;
+    private CommentService commentService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        commentRepo = mock(CommentRepo.class);
+        redisCache = mock(RedisCache.class);
+        ApiService apiService = mock(ApiService.class);
+        JwtService jwtService = mock(JwtService.class);
+        when(jwtService.validateAccessToken("token")).thenReturn(true);
+        when(jwtService.getPrincipal("token")).thenReturn(new UserPrincipal(7L, "author", List.of(), true));
+        when(apiService.requestToUnlinkCommentFromUser(any(), anyString(), any())).thenReturn(HttpStatus.OK);
+
+        // Ответ 10 на комментарий 5 карточки 3
+        CommentModel parent = CommentModel.builder().id(5L).cardId(3L).userId(7L).build();
+        when(commentRepo.getCommentModelById(10L)).thenReturn(Optional.of(
+                CommentModel.builder().id(10L).cardId(3L).userId(7L).parentComment(parent).build()));
+        when(commentRepo.getParentCommentId(10L)).thenReturn(Optional.of(5L));
+        when(commentRepo.getParentCommentId(5L)).thenReturn(Optional.empty());
+
+        commentService = new CommentService(commentRepo, mock(CardRepo.class),
+                mock(AuthenticationMicroServiceProperties.class, RETURNS_DEEP_STUBS), apiService, jwtService, redisCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void cacheIsChangedAfterCommit() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        commentService.deleteOneComment(10L, AUTHORIZATION);
+
+        // До коммита кеш и счетчики не тронуты, цепочка родителей уже прочитана из БД
+        verifyNoInteractions(redisCache);
+        verify(commentRepo).getParentCommentId(5L);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        verify(redisCache).nextGeneration("comments:card:3");
+        verify(redisCache).nextGeneration("comments:reply:10");
+        verify(redisCache).nextGeneration("comments:reply:5");
+        verify(redisCache).adjustCount("comments:reply:5", -1);
+        verify(redisCache).evictCount("comments:reply:10");
+    }
+
+    @Test
+    void rolledBackDeleteLeavesCacheAndCountsAlone() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        commentService.deleteOneComment(10L, AUTHORIZATION);
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verifyNoInteractions(redisCache);
+    }
+}
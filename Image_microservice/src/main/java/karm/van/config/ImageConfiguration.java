@@ -5,16 +5,20 @@ import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
 
-@EnableConfigurationProperties({AuthenticationMicroServiceProperties.class})
+@EnableConfigurationProperties({AuthenticationMicroServiceProperties.class, JwtProperties.class})
 @Configuration
 @EnableAsync
 public class ImageConfiguration {
@@ -45,11 +49,19 @@ public class ImageConfiguration {
     }
 
     @Bean
-    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection) {
-        return connection.sync();
+    public RedisCommands<String, String> redisCommands(StatefulRedisConnection<String, String> connection, MeterRegistry meterRegistry) {
+        return InstrumentedRedisCommands.wrap(connection.sync(), meterRegistry);
     }
     @Bean
-    public Executor getAsyncExecutor() {
+    public Executor getAsyncExecutor(Environment environment) {
+        // С spring.threads.virtual.enabled на Java 21 каждая @Async задача получает свой виртуальный поток,
+        // пул из 10 потоков больше не ограничивает блокирующие вызовы
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Async-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(4);
         executor.setMaxPoolSize(10);
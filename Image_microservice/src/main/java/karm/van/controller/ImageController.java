@@ -19,6 +19,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
+import java.util.Map;
 
 @Log4j2
 @RequiredArgsConstructor
@@ -48,6 +49,17 @@ public class ImageController {
         return imageService.getImages(imagesId,authorization);
     }
 
+    @Hidden
+    @PostMapping("/get/batch")
+    public Map<Long, List<ImageDto>> getCardsImages(@RequestBody Map<Long, List<Long>> imagesIdByCard,
+                                                    @RequestHeader("x-api-key") String key,
+                                                    @RequestHeader("Authorization") String authorization) throws TokenNotExistException, InvalidApiKeyException {
+        if(imageService.checkNoneEqualsApiKey(key)){
+            throw new InvalidApiKeyException("Invalid api-key");
+        }
+        return imageService.getImagesByCards(imagesIdByCard,authorization);
+    }
+
     @Hidden
     @GetMapping("/get-one/{imageId}")
     public ResponseEntity<?> getImage(@PathVariable Long imageId,
@@ -0,0 +1,13 @@
+package karm.van.dto;
+
+import java.util.List;
+
+public record UserPrincipal(Long id,
+                            String name,
+                            List<String> roles,
+                            boolean enabled) {
+
+    public boolean hasRole(String role) {
+        return roles != null && roles.contains(role);
+    }
+}
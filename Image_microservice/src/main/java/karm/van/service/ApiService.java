@@ -1,7 +1,7 @@
 package karm.van.service;
 
-import jakarta.annotation.PostConstruct;
 import karm.van.dto.UserDtoRequest;
+import karm.van.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatusCode;
@@ -10,29 +10,38 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @RequiredArgsConstructor
 @Component
 @Slf4j
 public class ApiService {
-    private WebClient webClient;
-
-    @PostConstruct
-    public void init(){
-        webClient = WebClient.create();
-    }
+    private final WebClient webClient;
+    // Базовые адреса (prefix + host + port + endpoint) разбираются один раз, дальше к ним только дописываются id
+    private final Map<String, String> urlTemplates = new ConcurrentHashMap<>();
+    // Одинаковые одновременные запросы на чтение (проверка одного токена, один и тот же пользователь) уходят в сеть один раз
+    private final SingleFlight inFlight = new SingleFlight();
 
     public String buildUrl(String prefix, String host, String port, String endpoint, Long... ids) {
-        UriComponentsBuilder uriBuilder = UriComponentsBuilder.fromHttpUrl(prefix + host + ":" + port + endpoint);
+        StringBuilder url = new StringBuilder(buildUrl(prefix, host, port, endpoint));
 
-        if (ids.length > 0) {
-            uriBuilder.pathSegment(ids[0].toString());
-            for (int i = 1; i < ids.length; i++) {
-                uriBuilder.pathSegment(ids[i].toString());
-            }
+        for (Long id : ids) {
+            appendPathSegment(url, id.toString());
         }
 
-        return uriBuilder.toUriString();
+        return url.toString();
+    }
+
+    public String buildUrl(String prefix, String host, String port, String endpoint) {
+        return urlTemplates.computeIfAbsent(prefix + host + ":" + port + endpoint,
+                url -> UriComponentsBuilder.fromHttpUrl(url).toUriString());
+    }
+
+    private void appendPathSegment(StringBuilder url, String segment) {
+        if (url.charAt(url.length() - 1) != '/') {
+            url.append('/');
+        }
+        url.append(segment);
     }
 
     private <T> T sendGetResponse(String uri, String token, Class<T> responseType, String apiKey) {
@@ -78,7 +87,7 @@ public class ApiService {
     }
 
     public Boolean validateToken(String token, String url) {
-        Map<?, ?> responseMap = sendGetResponse(url, token, Map.class,null);
+        Map<?, ?> responseMap = inFlight.execute("GET " + url + " " + token, () -> sendGetResponse(url, token, Map.class,null));
         return responseMap != null && responseMap.containsKey("valid") && (Boolean) responseMap.get("valid");
     }
 
@@ -88,7 +97,7 @@ public class ApiService {
     }
 
     public UserDtoRequest getUserByToken(String url, String token, String apiKey) {
-        return fetchUserData(url, token, apiKey);
+        return inFlight.execute("GET " + url + " " + token, () -> fetchUserData(url, token, apiKey));
     }
 
     private UserDtoRequest fetchUserData(String uri, String token, String apiKey) {
@@ -4,7 +4,7 @@ import io.lettuce.core.api.sync.RedisCommands;
 import karm.van.config.AuthenticationMicroServiceProperties;
 import karm.van.dto.ImageDto;
 import karm.van.dto.ImageDtoResponse;
-import karm.van.dto.UserDtoRequest;
+import karm.van.dto.UserPrincipal;
 import karm.van.exception.*;
 import karm.van.model.ImageModel;
 import karm.van.repository.ImageRepo;
@@ -16,9 +16,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -29,6 +28,7 @@ public class ImageService {
     private final ImageRepo imageRepo;
     private final AuthenticationMicroServiceProperties authProperties;
     private final ApiService apiService;
+    private final JwtService jwtService;
 
     @Value("${microservices.x-api-key}")
     private String apiKey;
@@ -37,6 +37,10 @@ public class ImageService {
     @Value("${card.images.count}")
     private int allowedImagesCount;
 
+    // Профиль кеширует сервис аутентификации, ключи у него с префиксом версии
+    @Value("${redis.cache.key-version:v3}")
+    private String cacheKeyVersion;
+
     private void saveImage(MultipartFile file, String fileName, String bucketName) throws ImageNotSavedException {
         try {
             minioService.putObject(bucketName,file, fileName);
@@ -61,13 +65,7 @@ public class ImageService {
     }
 
     private void checkToken(String token) throws TokenNotExistException {
-        if (!apiService.validateToken(token,
-                apiService.buildUrl(authProperties.getPrefix(),
-                        authProperties.getHost(),
-                        authProperties.getPort(),
-                        authProperties.getEndpoints().getValidateToken()
-                )
-        )){
+        if (!jwtService.validateAccessToken(token)){
             throw new TokenNotExistException("Invalid token or expired");
         }
     }
@@ -193,6 +191,27 @@ public class ImageService {
                 .stream().map(this::imageModelToDto).toList();
     }
 
+    // Картинки всех карточек страницы одним запросом в БД, порядок внутри карточки сохраняется
+    public Map<Long, List<ImageDto>> getImagesByCards(Map<Long, List<Long>> imagesIdByCard, String authorization) throws TokenNotExistException {
+        checkToken(authorization.substring(7));
+
+        List<Long> allImagesId = imagesIdByCard.values().stream()
+                .flatMap(List::stream)
+                .distinct()
+                .toList();
+
+        Map<Long, ImageDto> images = imageRepo.findAllById(allImagesId).stream()
+                .collect(Collectors.toMap(ImageModel::getId, this::imageModelToDto));
+
+        Map<Long, List<ImageDto>> result = new HashMap<>();
+        imagesIdByCard.forEach((cardId, imagesId) -> result.put(cardId, imagesId.stream()
+                .map(images::get)
+                .filter(Objects::nonNull)
+                .toList()));
+
+        return result;
+    }
+
     public boolean checkNoneEqualsApiKey(String key) {
         return !key.equals(apiKey);
     }
@@ -219,21 +238,6 @@ public class ImageService {
         }
     }
 
-    private UserDtoRequest requestToGetUserByToken(String token) throws UsernameNotFoundException {
-        UserDtoRequest user = apiService.getUserByToken(apiService.buildUrl(
-                authProperties.getPrefix(),
-                authProperties.getHost(),
-                authProperties.getPort(),
-                authProperties.getEndpoints().getUser()
-        ), token,apiKey);
-
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
-        }
-
-        return user;
-    }
-
     @Transactional
     public void addProfileImage(MultipartFile profileImage, String authorization, String minioProfileImageBucket) throws TokenNotExistException, ImageNotSavedException, ImageNotDeletedException, UsernameNotFoundException {
         String token = authorization.substring(7);
@@ -247,9 +251,9 @@ public class ImageService {
 
         imageRepo.save(imageModel);
 
-        UserDtoRequest user = requestToGetUserByToken(token);
+        UserPrincipal user = jwtService.getPrincipal(token);
 
-        String redisKey = "user_"+user.id();
+        String redisKey = cacheKeyVersion + ":user_"+user.id();
 
         System.out.println("PHOTO REDIS KEY: "+redisKey);
         redisCommands.del(redisKey);
@@ -0,0 +1,150 @@
+package karm.van.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.impl.TextCodec;
+import io.lettuce.core.api.sync.RedisCommands;
+import karm.van.config.AuthenticationMicroServiceProperties;
+import karm.van.config.JwtProperties;
+import karm.van.dto.UserDtoRequest;
+import karm.van.dto.UserPrincipal;
+import karm.van.exception.UsernameNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JwtService {
+    private static final String DEFAULT_KEY_ID = "default";
+    private static final String REVOKED_TOKENS_KEY = "revoked-tokens:";
+
+    private final JwtProperties jwtProperties;
+    private final RedisCommands<String,String> redisCommands;
+    private final ApiService apiService;
+    private final AuthenticationMicroServiceProperties authProperties;
+
+    @Value("${microservices.x-api-key}")
+    private String apiKey;
+
+    private final SigningKeyResolverAdapter signingKeyResolver = new SigningKeyResolverAdapter() {
+        @Override
+        public byte[] resolveSigningKeyBytes(JwsHeader header, Claims claims) {
+            String keyId = header.getKeyId() == null ? DEFAULT_KEY_ID : header.getKeyId();
+            String secret = jwtProperties.getKeys().get(keyId);
+
+            if (secret == null) {
+                throw new UnknownKeyException(keyId);
+            }
+            return TextCodec.BASE64.decode(secret);
+        }
+    };
+
+    // Проверка подписи, срока жизни и типа токена без похода в Authentication сервис.
+    // Если ключ нам неизвестен (ротация) или пользователь был заблокирован/изменен после выдачи токена -
+    // решение принимает Authentication сервис
+    public boolean validateAccessToken(String token) {
+        if (!jwtProperties.isLocalValidation()) {
+            return validateRemotely(token);
+        }
+
+        Claims claims;
+        try {
+            claims = extractAllClaims(token);
+        } catch (UnknownKeyException e) {
+            log.debug("Token signed with unknown key: " + e.getMessage());
+            return validateRemotely(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return false;
+        }
+
+        if (!"access".equals(claims.get("token_type")) || Boolean.FALSE.equals(claims.get("enabled"))) {
+            return false;
+        }
+
+        if (isRevoked(claims)) {
+            return validateRemotely(token);
+        }
+
+        return true;
+    }
+
+    // Id и роли вызывающего пользователя. Берутся из токена, а для старых токенов без этих claims
+    // и для отозванных токенов (роли могли измениться) - из Authentication сервиса
+    public UserPrincipal getPrincipal(String token) throws UsernameNotFoundException {
+        Optional<UserPrincipal> principal = extractPrincipal(token);
+        if (principal.isPresent()) {
+            return principal.get();
+        }
+
+        UserDtoRequest user = apiService.getUserByToken(apiService.buildUrl(
+                authProperties.getPrefix(),
+                authProperties.getHost(),
+                authProperties.getPort(),
+                authProperties.getEndpoints().getUser()
+        ), token, apiKey);
+
+        if (user == null) {
+            throw new UsernameNotFoundException("User not found");
+        }
+
+        return new UserPrincipal(user.id(), user.name(), user.role(), true);
+    }
+
+    private Optional<UserPrincipal> extractPrincipal(String token) {
+        if (!jwtProperties.isLocalValidation()) {
+            return Optional.empty();
+        }
+
+        try {
+            Claims claims = extractAllClaims(token);
+            Number userId = claims.get("user_id", Number.class);
+            List<?> roles = claims.get("roles", List.class);
+
+            if (userId == null || roles == null || isRevoked(claims)) {
+                return Optional.empty();
+            }
+
+            return Optional.of(new UserPrincipal(
+                    userId.longValue(),
+                    claims.getSubject(),
+                    roles.stream().map(String::valueOf).toList(),
+                    !Boolean.FALSE.equals(claims.get("enabled"))));
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Claims extractAllClaims(String token) {
+        return Jwts.parser().setSigningKeyResolver(signingKeyResolver).parseClaimsJws(token).getBody();
+    }
+
+    private boolean isRevoked(Claims claims) {
+        String revokedAt = redisCommands.get(REVOKED_TOKENS_KEY + claims.getSubject());
+        return revokedAt != null
+                && (claims.getIssuedAt() == null || claims.getIssuedAt().getTime() <= Long.parseLong(revokedAt));
+    }
+
+    private boolean validateRemotely(String token) {
+        return apiService.validateToken(token,
+                apiService.buildUrl(authProperties.getPrefix(),
+                        authProperties.getHost(),
+                        authProperties.getPort(),
+                        authProperties.getEndpoints().getValidateToken()
+                ));
+    }
+
+    private static class UnknownKeyException extends JwtException {
+        UnknownKeyException(String keyId) {
+            super(keyId);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package karm.van.utils;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+// Объединяет одновременные одинаковые запросы: пока загрузка по ключу идет, остальные вызовы с тем же ключом
+// не делают свою, а ждут и получают ее результат (или ее ошибку). После завершения ключ освобождается,
+// так что это не кеш - следующий вызов снова пойдет за данными
+public class SingleFlight {
+    private final Map<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    public <T, E extends Exception> T execute(String key, Loader<T, E> loader) throws E {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, call);
+
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            T result = loader.load();
+            call.complete(result);
+            return result;
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> executeAsync(String key, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            CompletableFuture<Object> call = new CompletableFuture<>();
+            CompletableFuture<Object> existing = calls.putIfAbsent(key, call);
+
+            if (existing != null) {
+                // Отмена ожидающего не должна отменять общую загрузку
+                return Mono.fromFuture(existing, true).map(result -> (T) result);
+            }
+
+            return loader.get()
+                    .doOnSuccess(call::complete)
+                    .doOnError(call::completeExceptionally)
+                    .doOnCancel(() -> call.completeExceptionally(new CancellationException(key)))
+                    .doFinally(signal -> calls.remove(key, call));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T, E extends Exception> T await(CompletableFuture<Object> call) throws E {
+        try {
+            return (T) call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the same request");
+        } catch (ExecutionException | CompletionException e) {
+            // Ошибка того же загрузчика, поэтому это либо E, либо unchecked
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw (E) cause;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// Нагрузка на листинг и поиск карточек Ads сервиса.
+// Запуск: k6 run -e BASE_URL=http://localhost:8080 -e TOKEN=<jwt> -e MODE=platform load-test/cards.js
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const TOKEN = __ENV.TOKEN;
+const MODE = __ENV.MODE || 'platform';
+const RATE = parseInt(__ENV.RATE || '200');
+const DURATION = __ENV.DURATION || '2m';
+const QUERIES = (__ENV.QUERIES || 'java,spring,backend,designer,startup').split(',');
+
+if (!TOKEN) {
+    throw new Error('TOKEN is required: access token of any registered user');
+}
+
+const scenario = (exec) => ({
+    executor: 'constant-arrival-rate',
+    exec,
+    rate: RATE,
+    timeUnit: '1s',
+    duration: DURATION,
+    preAllocatedVUs: RATE,
+    maxVUs: RATE * 4,
+});
+
+export const options = {
+    scenarios: {
+        list: scenario('list'),
+        search: scenario('search'),
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    // Пороги нужны только чтобы k6 посчитал метрики отдельно по каждому сценарию
+    thresholds: {
+        'http_req_duration{scenario:list}': ['max>=0'],
+        'http_req_duration{scenario:search}': ['max>=0'],
+        'http_reqs{scenario:list}': ['count>=0'],
+        'http_reqs{scenario:search}': ['count>=0'],
+        'http_req_failed{scenario:list}': ['rate>=0'],
+        'http_req_failed{scenario:search}': ['rate>=0'],
+    },
+};
+
+const params = { headers: { Authorization: `Bearer ${TOKEN}` } };
+
+export function list() {
+    const page = Math.floor(Math.random() * 20);
+    const res = http.get(`${BASE_URL}/card/getAll/${page}/10`, params);
+    check(res, { 'list 200': (r) => r.status === 200 });
+}
+
+export function search() {
+    const query = QUERIES[Math.floor(Math.random() * QUERIES.length)];
+    const page = Math.floor(Math.random() * 5);
+    const res = http.get(`${BASE_URL}/card/search?query=${encodeURIComponent(query)}&pageNumber=${page}&limit=10`, params);
+    check(res, { 'search 200': (r) => r.status === 200 });
+}
+
+function row(name, metrics, seconds) {
+    const duration = metrics[`http_req_duration{scenario:${name}}`].values;
+    const count = metrics[`http_reqs{scenario:${name}}`].values.count;
+    const failed = metrics[`http_req_failed{scenario:${name}}`].values.rate;
+    return {
+        mode: MODE,
+        path: name,
+        throughput_rps: +(count / seconds).toFixed(1),
+        p50_ms: +duration['p(50)'].toFixed(1),
+        p99_ms: +duration['p(99)'].toFixed(1),
+        errors_pct: +(failed * 100).toFixed(2),
+    };
+}
+
+export function handleSummary(data) {
+    const seconds = data.state.testRunDurationMs / 1000;
+    const rows = ['list', 'search'].map((name) => row(name, data.metrics, seconds));
+    const text = rows.map((r) => `${r.mode}\t${r.path}\t${r.throughput_rps} rps\tp50 ${r.p50_ms} ms\tp99 ${r.p99_ms} ms\terrors ${r.errors_pct}%`).join('\n');
+
+    return {
+        stdout: text + '\n',
+        [`load-test/results/${MODE}.json`]: JSON.stringify(rows, null, 2),
+    };
+}
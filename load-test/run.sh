@@ -0,0 +1,53 @@
+#!/usr/bin/env bash
+# Прогоняет load-test/cards.js на обеих моделях исполнения: обычные потоки (Java 17) и виртуальные (Java 21).
+# Стек каждый раз пересобирается через docker compose, результаты - в load-test/results/<mode>.json
+#
+#   TOKEN=<jwt> ./load-test/run.sh
+#
+# Необязательные переменные: COMPOSE_FILE (docker-compose.yml), RATE, DURATION, QUERIES, BASE_URL
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+: "${TOKEN:?TOKEN is required: access token of any registered user}"
+COMPOSE_FILE="${COMPOSE_FILE:-docker-compose.yml}"
+BASE_URL="${BASE_URL:-http://localhost:8080}"
+
+mkdir -p load-test/results
+
+wait_healthy() {
+    for _ in $(seq 1 120); do
+        if curl -fs "$BASE_URL/actuator/health" > /dev/null; then
+            return 0
+        fi
+        sleep 2
+    done
+    echo "Ads service did not become healthy" >&2
+    exit 1
+}
+
+run_mode() {
+    local mode=$1 profiles=$2 image=$3 virtual=$4 limit=${5:-200}
+
+    echo "=== $mode ==="
+    MAVEN_PROFILES="$profiles" RUNTIME_IMAGE="$image" \
+        docker compose -f "$COMPOSE_FILE" build
+    VIRTUAL_THREADS="$virtual" VIRTUAL_MAX_CONCURRENT_REQUESTS="$limit" \
+        docker compose -f "$COMPOSE_FILE" up -d --force-recreate
+    wait_healthy
+
+    # Прогрев: кеши и JIT, в результаты не идет
+    k6 run --quiet -e BASE_URL="$BASE_URL" -e TOKEN="$TOKEN" -e MODE="warmup" -e DURATION=30s \
+        load-test/cards.js > /dev/null
+
+    k6 run -e BASE_URL="$BASE_URL" -e TOKEN="$TOKEN" -e MODE="$mode" load-test/cards.js
+}
+
+run_mode platform "" "openjdk:17-jdk-alpine" false
+run_mode virtual "virtual-threads" "eclipse-temurin:21-jre-alpine" true
+# Без ограничения одновременных запросов в Ads (virtual-threads.max-concurrent-requests=0)
+run_mode virtual-unbounded "virtual-threads" "eclipse-temurin:21-jre-alpine" true 0
+
+rm -f load-test/results/warmup.json
+echo
+echo "Results: load-test/results/platform.json, load-test/results/virtual.json, load-test/results/virtual-unbounded.json"